@@ -0,0 +1,63 @@
+package com.cashcard;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Shared setup for benchmarks that need the real application: starts it quietly and seeds its database
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        List<String> all = new ArrayList<>(List.of(
+                "server.port=0",
+                "logging.level.root=WARN",
+                "spring.main.banner-mode=off",
+                // Benchmarks drive a single owner far past any per-owner rate limit
+                "cashcard.admission.enabled=false"));
+        all.addAll(List.of(properties));
+        // As command line arguments they take precedence over application.properties
+        return new SpringApplicationBuilder(CashCardApplication.class)
+                .run(all.stream().map(property -> "--" + property).toArray(String[]::new));
+    }
+
+    // Inserts "cardsPerOwner" cards for "wilson" and for each of "otherOwners" more owners, so that the owner
+    // the benchmarks query shares the table (and its indexes) with everybody else's cards
+    static void seed(JdbcTemplate jdbcTemplate, int otherOwners, int cardsPerOwner) {
+        List<Object[]> rows = new ArrayList<>(cardsPerOwner);
+        for (int owner = 0; owner <= otherOwners; owner++) {
+            String name = owner == 0 ? "wilson" : "owner-" + owner;
+            rows.clear();
+            for (int card = 0; card < cardsPerOwner; card++) {
+                rows.add(new Object[]{card * 7919L % 100_000, name});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO cash_card (amount, owner) VALUES (?, ?)", rows);
+        }
+    }
+
+    // Same cards as above, written through the repository - the in-memory engine only reads the database when it first starts
+    static void seed(CashCardRepository repository, int otherOwners, int cardsPerOwner) {
+        long[] amounts = new long[cardsPerOwner];
+        for (int card = 0; card < cardsPerOwner; card++) {
+            amounts[card] = card * 7919L % 100_000;
+        }
+        for (int owner = 0; owner <= otherOwners; owner++) {
+            repository.insertAll(owner == 0 ? "wilson" : "owner-" + owner, amounts);
+        }
+    }
+
+    static long[] idsOf(CashCardRepository repository, String owner) {
+        return repository.findByOwner(owner, Pageable.unpaged()).stream().mapToLong(CashCard::id).toArray();
+    }
+
+    static long[] idsOf(JdbcTemplate jdbcTemplate, String owner) {
+        return jdbcTemplate.queryForList("SELECT id FROM cash_card WHERE owner = ?", Long.class, owner)
+                .stream().mapToLong(Long::longValue).toArray();
+    }
+}
@@ -0,0 +1,90 @@
+package com.cashcard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+// Creating "cards" cards over HTTP: one POST /cashcards per card, against a single POST /cashcards/batch with all of them.
+// Both go through the real server, security filter chain and database - divide "cards" by the score for cards per second.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardBatchBenchmark {
+
+    @Param({"1000"})
+    int cards;
+
+    private ConfigurableApplicationContext application;
+    private HttpClient client;
+    private String authorization;
+    private URI single;
+    private URI batch;
+    private String batchBody;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        application = BenchmarkApplication.start();
+        String base = "http://localhost:" + application.getEnvironment().getProperty("local.server.port") + "/cashcards";
+        single = URI.create(base);
+        batch = URI.create(base + "/batch");
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        authorization = "Basic " + Base64.getEncoder().encodeToString("wilson:abc123".getBytes(StandardCharsets.UTF_8));
+        StringBuilder body = new StringBuilder();
+        for (int card = 0; card < cards; card++) {
+            body.append("{\"amount\": ").append(card % 1000).append(".25}\n");
+        }
+        batchBody = body.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        application.close();
+    }
+
+    @Benchmark
+    public int singlePosts() throws Exception {
+        int created = 0;
+        for (int card = 0; card < cards; card++) {
+            HttpResponse<Void> response = client.send(post(single, "application/json", "{\"amount\": " + card % 1000 + ".25}"),
+                    HttpResponse.BodyHandlers.discarding());
+            created += response.statusCode() == 201 ? 1 : 0;
+        }
+        return created;
+    }
+
+    @Benchmark
+    public String batchPost() throws Exception {
+        return client.send(post(batch, "application/x-ndjson", batchBody), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private HttpRequest post(URI uri, String contentType, String body) {
+        return HttpRequest.newBuilder(uri)
+                .header("Authorization", authorization)
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package com.cashcard;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// A page of cards in each encoding "CashCardEncodingConfig" offers - time to encode and decode it,
+// and (printed once per trial, as it does not vary) its size on the wire, plain and gzip-compressed
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardEncodingBenchmark {
+
+    @Param({"json", "cbor", "smile"})
+    String format;
+
+    @Param({"20", "200"})
+    int listSize;
+
+    private ObjectWriter listWriter;
+    private ObjectReader listReader;
+    private List<CashCard> cashCards;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        JsonFactory factory = switch (format) {
+            case "json" -> new JsonFactory();
+            case "cbor" -> new CBORFactory();
+            case "smile" -> new SmileFactory();
+            default -> throw new IllegalArgumentException(format);
+        };
+        // Configured like the mappers Spring Boot gives Spring MVC's message converters
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().factory(factory).build();
+        listWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, CashCard.class));
+        listReader = objectMapper.readerForListOf(CashCard.class);
+
+        cashCards = new ArrayList<>(listSize);
+        for (int i = 0; i < listSize; i++) {
+            cashCards.add(new CashCard(100L + i, i * 1025L, "wilson"));
+        }
+        encoded = listWriter.writeValueAsBytes(cashCards);
+        System.out.printf("%n%s, %d cards: %d bytes, %d bytes gzipped%n", format, listSize, encoded.length, gzipped(encoded));
+    }
+
+    @Benchmark
+    public byte[] encodeList() throws IOException {
+        return listWriter.writeValueAsBytes(cashCards);
+    }
+
+    @Benchmark
+    public List<CashCard> decodeList() throws IOException {
+        return listReader.readValue(encoded);
+    }
+
+    private static int gzipped(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.size();
+    }
+}
@@ -0,0 +1,73 @@
+package com.cashcard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+// The JDBC export behind GET /cashcards/export: how long until the first card is handed over ("firstCard"), against
+// reading all of the owner's "cardsPerOwner" cards ("allCards"). A streaming export starts in about the same time
+// whatever the size - one that builds the whole result first takes nearly as long for the first card as for all of them.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardExportBenchmark {
+
+    // Thrown by the consumer to stop the export after one card - no stack trace to fill in
+    private static final RuntimeException FIRST_CARD = new RuntimeException("first card", null, false, false) {
+    };
+
+    @Param({"1000", "200000"})
+    int cardsPerOwner;
+
+    private ConfigurableApplicationContext application;
+    private CashCardRepository cashCardRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        application = BenchmarkApplication.start();
+        cashCardRepository = application.getBean(CashCardRepository.class);
+        BenchmarkApplication.seed(application.getBean(JdbcTemplate.class), 1, cardsPerOwner);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public void firstCard(Blackhole blackhole) {
+        try {
+            cashCardRepository.forEachByOwner("wilson", cashCard -> {
+                blackhole.consume(cashCard);
+                throw FIRST_CARD;
+            });
+        } catch (RuntimeException e) {
+            if (e != FIRST_CARD) {
+                throw e;
+            }
+        }
+    }
+
+    @Benchmark
+    public void allCards(Blackhole blackhole) {
+        cashCardRepository.forEachByOwner("wilson", blackhole::consume);
+    }
+}
@@ -0,0 +1,82 @@
+package com.cashcard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Jackson (de)serialization of "CashCard" - what every request and response of the API pays
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardJsonBenchmark {
+
+    @Param({"20", "200"})
+    int listSize;
+
+    private ObjectWriter singleWriter;
+    private ObjectReader singleReader;
+    private ObjectWriter listWriter;
+    private ObjectReader listReader;
+    private CashCard cashCard;
+    private List<CashCard> cashCards;
+    private byte[] singleJson;
+    private byte[] listJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Configured like the "ObjectMapper" Spring Boot gives Spring MVC
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        singleWriter = objectMapper.writerFor(CashCard.class);
+        singleReader = objectMapper.readerFor(CashCard.class);
+        listWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, CashCard.class));
+        listReader = objectMapper.readerForListOf(CashCard.class);
+
+        cashCard = new CashCard(99L, 12345L, "wilson");
+        cashCards = new ArrayList<>(listSize);
+        for (int i = 0; i < listSize; i++) {
+            cashCards.add(new CashCard(100L + i, i * 1025L, "wilson"));
+        }
+        singleJson = singleWriter.writeValueAsBytes(cashCard);
+        listJson = listWriter.writeValueAsBytes(cashCards);
+    }
+
+    @Benchmark
+    public byte[] serializeSingle() throws IOException {
+        return singleWriter.writeValueAsBytes(cashCard);
+    }
+
+    @Benchmark
+    public CashCard deserializeSingle() throws IOException {
+        return singleReader.readValue(singleJson);
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws IOException {
+        return listWriter.writeValueAsBytes(cashCards);
+    }
+
+    @Benchmark
+    public List<CashCard> deserializeList() throws IOException {
+        return listReader.readValue(listJson);
+    }
+}
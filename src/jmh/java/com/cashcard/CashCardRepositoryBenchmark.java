@@ -0,0 +1,96 @@
+package com.cashcard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// "CashCardRepository" queries against the real application's H2 database
+// "cardsPerOwner" sets the database size (10 owners), "cache" compares the Caffeine read-through cache with no cache at all,
+// "repository" compares Spring Data JDBC on H2 with the in-memory engine ("InMemoryCashCardRepository")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardRepositoryBenchmark {
+
+    @Param({"1000", "100000"})
+    int cardsPerOwner;
+
+    @Param({"caffeine", "none"})
+    String cache;
+
+    @Param({"jdbc", "memory"})
+    String repository;
+
+    private ConfigurableApplicationContext application;
+    private CashCardRepository cashCardRepository;
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        application = BenchmarkApplication.start(
+                "spring.cache.type=" + cache,
+                "cashcard.repository=" + repository,
+                "cashcard.repository.memory.wal-file=" + walFile(),
+                "cashcard.repository.memory.fsync=false");
+        cashCardRepository = application.getBean(CashCardRepository.class);
+        if (repository.equals("memory")) {
+            BenchmarkApplication.seed(cashCardRepository, 9, cardsPerOwner);
+            ids = BenchmarkApplication.idsOf(cashCardRepository, "wilson");
+        } else {
+            JdbcTemplate jdbcTemplate = application.getBean(JdbcTemplate.class);
+            BenchmarkApplication.seed(jdbcTemplate, 9, cardsPerOwner);
+            ids = BenchmarkApplication.idsOf(jdbcTemplate, "wilson");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        application.close();
+        Files.deleteIfExists(walFile());
+    }
+
+    private static Path walFile() {
+        return Path.of(System.getProperty("java.io.tmpdir"), "cashcard-benchmark.wal");
+    }
+
+    @Benchmark
+    public CashCard findByIdAndOwner() {
+        return cashCardRepository.findByIdAndOwner(ids[ThreadLocalRandom.current().nextInt(ids.length)], "wilson");
+    }
+
+    // The default first page of GET /cashcards
+    @Benchmark
+    public List<CashCard> findByOwnerFirstPage() {
+        return cashCardRepository.findByOwner("wilson", PageRequest.of(0, 20, Sort.by("amount")));
+    }
+
+    // A deep OFFSET page, for comparison with keyset pagination
+    @Benchmark
+    public List<CashCard> findByOwnerDeepPage() {
+        return cashCardRepository.findByOwner("wilson", PageRequest.of(cardsPerOwner / 20 - 1, 20, Sort.by("amount")));
+    }
+}
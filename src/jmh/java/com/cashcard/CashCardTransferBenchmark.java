@@ -0,0 +1,64 @@
+package com.cashcard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Transfer throughput with 8 threads under contention.
+// "cards" sets how many cards the transfers are spread over - 2 means every transfer fights for the same two rows,
+// 10000 means two transfers rarely share a card and should scale with the available cores.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class CashCardTransferBenchmark {
+
+    @Param({"2", "16", "10000"})
+    int cards;
+
+    private ConfigurableApplicationContext application;
+    private CashCardRepository cashCardRepository;
+    private List<Long> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        application = BenchmarkApplication.start();
+        cashCardRepository = application.getBean(CashCardRepository.class);
+        long[] amounts = new long[cards];
+        Arrays.fill(amounts, 1_000_000_000L);
+        ids = cashCardRepository.insertAll("wilson", amounts);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public CashCardTransferOperations.Outcome transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(cards);
+        int to = (from + 1 + random.nextInt(cards - 1)) % cards;
+        return cashCardRepository.transfer("wilson", ids.get(from), ids.get(to), 1);
+    }
+}
@@ -0,0 +1,62 @@
+package com.cashcard;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Cost of checking a Basic-auth password, using the exact beans "SecurityConfig" wires up:
+// the raw BCrypt verification, and the same login answered by the credential cache
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class PasswordVerificationBenchmark {
+
+    private PasswordEncoder passwordEncoder;
+    private String encodedPassword;
+    private AuthenticationProvider authenticationProvider;
+
+    @Setup
+    public void setUp() {
+        SecurityConfig securityConfig = new SecurityConfig();
+        passwordEncoder = securityConfig.passwordEncoder();
+        encodedPassword = passwordEncoder.encode("abc123");
+
+        UserDetailsService users = securityConfig.testOnlyUsers(passwordEncoder);
+        authenticationProvider = securityConfig.authenticationProvider(
+                users, passwordEncoder, new SimpleMeterRegistry(), 10_000, Duration.ofHours(1));
+        authenticationProvider.authenticate(login());
+    }
+
+    @Benchmark
+    public boolean bcryptMatches() {
+        return passwordEncoder.matches("abc123", encodedPassword);
+    }
+
+    @Benchmark
+    public Authentication cachedAuthentication() {
+        return authenticationProvider.authenticate(login());
+    }
+
+    private static UsernamePasswordAuthenticationToken login() {
+        return UsernamePasswordAuthenticationToken.unauthenticated("wilson", "abc123");
+    }
+}
@@ -0,0 +1,72 @@
+package com.cashcard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Write throughput of the sharded JDBC repository with 8 writer threads, by number of in-memory H2 shards.
+// Writes are spread over "owners" owners, so each shard gets a share of them - throughput should grow with "shards"
+// as long as there are cores left for the extra databases.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ShardedWriteBenchmark {
+
+    @Param({"1", "2", "4"})
+    int shards;
+
+    @Param({"64"})
+    int owners;
+
+    private ConfigurableApplicationContext application;
+    private CashCardRepository cashCardRepository;
+    private String[] ownerNames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String run = UUID.randomUUID().toString();
+        List<String> properties = new ArrayList<>(List.of("cashcard.sharding.enabled=true"));
+        for (int shard = 0; shard < shards; shard++) {
+            properties.add("cashcard.sharding.shards[" + shard + "].url=jdbc:h2:mem:bench-" + run + "-" + shard + ";DB_CLOSE_DELAY=-1");
+        }
+        application = BenchmarkApplication.start(properties.toArray(String[]::new));
+        cashCardRepository = application.getBean(CashCardRepository.class);
+        ownerNames = new String[owners];
+        for (int owner = 0; owner < owners; owner++) {
+            ownerNames[owner] = "writer-" + owner;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public CashCard insert() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return cashCardRepository.save(new CashCard(null, random.nextLong(100_000), ownerNames[random.nextInt(owners)]));
+    }
+}
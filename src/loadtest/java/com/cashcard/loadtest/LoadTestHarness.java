@@ -0,0 +1,378 @@
+package com.cashcard.loadtest;
+
+import com.cashcard.CashCardApplication;
+import com.cashcard.CashCardRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.UserDetailsManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Open-model load test: requests are sent at a fixed target rate whether or not earlier ones have come back,
+// the way independent users arrive - unlike the closed model of "VirtualThreadBenchmark", where a slow server
+// also slows down the load it is given.
+//
+// Starts the application in-process against a fresh H2 seeded with "owners" x "cards" cards (one login per owner),
+// then drives a weighted mix of findById, findAll (sorted page), create and put for "warmup" + "duration" seconds.
+//
+// Latency is measured from when a request was *scheduled* to go out, not from when it actually went out.
+// If the server (or the client's in-flight limit) holds requests up, the waiting counts too - this corrects for
+// "coordinated omission", which otherwise hides exactly the stalls a load test is meant to find.
+// Service time (from actually sent to answered) is reported next to it.
+//
+// Writes "<label>.json" and "<label>.html" (plus one HdrHistogram ".hgrm" file per operation) to "report-dir",
+// so runs on different commits can be compared side by side. Any other "--some.property=value" argument is passed
+// on to the application, e.g. "--spring.profiles.active=virtual-threads".
+public class LoadTestHarness {
+    private static final String PASSWORD = "load-test";
+    private static final List<String> OPERATIONS = List.of("findById", "findAll", "create", "put");
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99.9", "p99.99"};
+
+    record OperationReport(String operation, long requests, long errors, Map<Integer, Long> statuses,
+                           double throughputPerSecond, Map<String, Double> latencyMillis,
+                           Map<String, Double> serviceTimeMillis) {
+    }
+
+    record Report(Instant startedAt, Map<String, Object> configuration, double achievedRatePerSecond,
+                  List<OperationReport> operations, OperationReport all) {
+    }
+
+    // Everything recorded for one operation - or, for "all", across operations
+    private static final class Stats {
+        final Recorder latency = new Recorder(3);
+        final Recorder serviceTime = new Recorder(3);
+        final LongAdder errors = new LongAdder();
+        final ConcurrentHashMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        void record(long latencyNanos, long serviceNanos, int status) {
+            latency.recordValue(latencyNanos);
+            serviceTime.recordValue(serviceNanos);
+            if (status < 200 || status > 299) {
+                errors.increment();
+            }
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int owners = Integer.parseInt(VirtualThreadBenchmark.option(args, "owners", "100"));
+        int cardsPerOwner = Integer.parseInt(VirtualThreadBenchmark.option(args, "cards", "100"));
+        double rate = Double.parseDouble(VirtualThreadBenchmark.option(args, "rate", "500"));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(VirtualThreadBenchmark.option(args, "warmup", "30")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(VirtualThreadBenchmark.option(args, "duration", "30")));
+        int maxInFlight = Integer.parseInt(VirtualThreadBenchmark.option(args, "max-in-flight", "10000"));
+        int[] weights = weights(VirtualThreadBenchmark.option(args, "mix", "findById=60,findAll=20,create=10,put=10"));
+        File reportDir = new File(VirtualThreadBenchmark.option(args, "report-dir", "build/reports/loadtest/harness"));
+        String label = VirtualThreadBenchmark.option(args, "label", "load-test");
+
+        Map<String, Object> configuration = new LinkedHashMap<>();
+        configuration.put("owners", owners);
+        configuration.put("cardsPerOwner", cardsPerOwner);
+        configuration.put("targetRatePerSecond", rate);
+        configuration.put("warmupSeconds", warmup.toSeconds());
+        configuration.put("durationSeconds", duration.toSeconds());
+        configuration.put("maxInFlight", maxInFlight);
+        configuration.put("mix", VirtualThreadBenchmark.option(args, "mix", "findById=60,findAll=20,create=10,put=10"));
+        configuration.put("applicationArguments", applicationArguments(args));
+        configuration.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+
+        try (ConfigurableApplicationContext app = start(applicationArguments(args))) {
+            int port = app.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            System.out.printf("Seeding %d owners x %d cards...%n", owners, cardsPerOwner);
+            long[][] ids = seed(app, owners, cardsPerOwner);
+            System.out.printf("Driving %.0f req/s for %ds (+%ds warmup)...%n", rate, duration.toSeconds(), warmup.toSeconds());
+            Map<String, Histogram> histograms = new LinkedHashMap<>();
+            Report report = drive(port, ids, rate, warmup, duration, maxInFlight, weights, configuration, histograms);
+            write(report, histograms, reportDir, label);
+        }
+    }
+
+    private static List<String> applicationArguments(String[] args) {
+        List<String> own = List.of("owners", "cards", "rate", "warmup", "duration", "max-in-flight", "mix", "report-dir", "label");
+        return Arrays.stream(args)
+                .filter(arg -> arg.startsWith("--") && arg.contains("="))
+                .filter(arg -> !own.contains(arg.substring(2, arg.indexOf('='))))
+                .toList();
+    }
+
+    private static int[] weights(String mix) {
+        int[] weights = new int[OPERATIONS.size()];
+        for (String part : mix.split(",")) {
+            String[] nameAndWeight = part.trim().split("=");
+            int operation = OPERATIONS.indexOf(nameAndWeight[0]);
+            if (operation < 0 || nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("Unknown operation in mix: " + part + " - expected one of " + OPERATIONS);
+            }
+            weights[operation] = Integer.parseInt(nameAndWeight[1]);
+        }
+        return weights;
+    }
+
+    private static ConfigurableApplicationContext start(List<String> applicationArguments) {
+        List<String> arguments = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--server.tomcat.max-connections=20000",
+                "--server.tomcat.accept-count=1000",
+                "--logging.level.root=WARN",
+                "--spring.main.banner-mode=off"));
+        // Passed last, so they win over the defaults above - and, as command line arguments, over application.properties
+        arguments.addAll(applicationArguments);
+        return new SpringApplicationBuilder(CashCardApplication.class).run(arguments.toArray(String[]::new));
+    }
+
+    // One login and "cardsPerOwner" cards per owner. Cards go in through the repository's batch insert,
+    // which works the same with either storage engine ("cashcard.repository").
+    private static long[][] seed(ConfigurableApplicationContext app, int owners, int cardsPerOwner) {
+        UserDetailsManager users = (UserDetailsManager) app.getBean(UserDetailsService.class);
+        // Hashed once and shared - BCrypt per owner would make seeding take minutes for nothing
+        String encodedPassword = app.getBean(PasswordEncoder.class).encode(PASSWORD);
+        CashCardRepository repository = app.getBean(CashCardRepository.class);
+
+        long[][] ids = new long[owners][];
+        long[] amounts = new long[cardsPerOwner];
+        for (int owner = 0; owner < owners; owner++) {
+            users.createUser(User.withUsername(ownerName(owner)).password(encodedPassword).roles("CARD-OWNER").build());
+            for (int card = 0; card < cardsPerOwner; card++) {
+                amounts[card] = (owner * 31L + card) * 7919L % 100_000;
+            }
+            ids[owner] = repository.insertAll(ownerName(owner), amounts).stream().mapToLong(Long::longValue).toArray();
+        }
+        return ids;
+    }
+
+    private static String ownerName(int owner) {
+        return "load-owner-" + owner;
+    }
+
+    private static Report drive(int port, long[][] ids, double rate, Duration warmup, Duration duration, int maxInFlight,
+                                int[] weights, Map<String, Object> configuration, Map<String, Histogram> histograms)
+            throws InterruptedException {
+        String[] authorizations = new String[ids.length];
+        for (int owner = 0; owner < ids.length; owner++) {
+            authorizations[owner] = "Basic " + Base64.getEncoder()
+                    .encodeToString((ownerName(owner) + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+        }
+        int totalWeight = Arrays.stream(weights).sum();
+        Stats[] stats = new Stats[OPERATIONS.size()];
+        Arrays.setAll(stats, i -> new Stats());
+        Stats all = new Stats();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicLong lastDone = new AtomicLong();
+        SplittableRandom random = new SplittableRandom(42);
+        String baseUri = "http://localhost:" + port + "/cashcards";
+
+        Instant startedAt = Instant.now();
+        long interval = (long) (1_000_000_000L / rate);
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+
+        try (ExecutorService httpExecutor = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient httpClient = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .executor(httpExecutor)
+                     .connectTimeout(Duration.ofSeconds(30))
+                     .build();
+             ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                long scheduled = start + i * interval;
+                if (scheduled >= end) {
+                    break;
+                }
+                long wait;
+                while ((wait = scheduled - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                // Blocks once "max-in-flight" requests are outstanding - the time spent here still counts as
+                // latency, because it is measured from "scheduled"
+                inFlight.acquire();
+
+                int operation = pick(weights, totalWeight, random.nextInt(totalWeight));
+                int owner = random.nextInt(ids.length);
+                long id = ids[owner][random.nextInt(ids[owner].length)];
+                HttpRequest request = request(OPERATIONS.get(operation), baseUri, id, random.nextLong(1, 100_000),
+                        random.nextInt(5), authorizations[owner]);
+                boolean measured = scheduled >= measureFrom;
+
+                requests.submit(() -> {
+                    long sent = System.nanoTime();
+                    int status;
+                    try {
+                        status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (IOException e) {
+                        status = 0;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        status = 0;
+                    } finally {
+                        inFlight.release();
+                    }
+                    long done = System.nanoTime();
+                    lastDone.accumulateAndGet(done, Math::max);
+                    if (measured) {
+                        stats[operation].record(done - scheduled, done - sent, status);
+                        all.record(done - scheduled, done - sent, status);
+                    }
+                });
+            }
+            requests.shutdown();
+            requests.awaitTermination(5, TimeUnit.MINUTES);
+        }
+
+        // Throughput over the time it actually took to answer the measured requests - an overloaded server
+        // finishes well after the last one was sent
+        double seconds = Math.max(duration.toNanos(), lastDone.get() - measureFrom) / 1e9;
+        List<OperationReport> operations = new ArrayList<>();
+        for (int i = 0; i < OPERATIONS.size(); i++) {
+            if (weights[i] > 0) {
+                operations.add(report(OPERATIONS.get(i), stats[i], seconds, histograms));
+            }
+        }
+        OperationReport total = report("all", all, seconds, histograms);
+        return new Report(startedAt, configuration, total.throughputPerSecond(), operations, total);
+    }
+
+    private static int pick(int[] weights, int totalWeight, int roll) {
+        for (int i = 0; i < weights.length; i++) {
+            roll -= weights[i];
+            if (roll < 0) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Roll out of range of " + totalWeight);
+    }
+
+    private static HttpRequest request(String operation, String baseUri, long id, long cents, int page, String authorization) {
+        String amount = "{\"amount\": " + cents / 100 + "." + (cents % 100 < 10 ? "0" : "") + cents % 100 + "}";
+        HttpRequest.Builder builder = switch (operation) {
+            case "findById" -> HttpRequest.newBuilder(URI.create(baseUri + "/" + id));
+            case "findAll" -> HttpRequest.newBuilder(URI.create(baseUri + "?page=" + page + "&size=20&sort=amount,desc"));
+            case "create" -> HttpRequest.newBuilder(URI.create(baseUri))
+                    .POST(HttpRequest.BodyPublishers.ofString(amount));
+            case "put" -> HttpRequest.newBuilder(URI.create(baseUri + "/" + id))
+                    .PUT(HttpRequest.BodyPublishers.ofString(amount));
+            default -> throw new IllegalArgumentException(operation);
+        };
+        return builder
+                .header("Authorization", authorization)
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(60))
+                .build();
+    }
+
+    // Also hands back the latency histogram itself, for the ".hgrm" files
+    private static OperationReport report(String operation, Stats stats, double seconds, Map<String, Histogram> histograms) {
+        Histogram latency = stats.latency.getIntervalHistogram();
+        Histogram serviceTime = stats.serviceTime.getIntervalHistogram();
+        histograms.put(operation, latency);
+        Map<Integer, Long> statuses = new TreeMap<>();
+        stats.statuses.forEach((status, count) -> statuses.put(status, count.sum()));
+        return new OperationReport(operation, latency.getTotalCount(), stats.errors.sum(), statuses,
+                latency.getTotalCount() / seconds, percentiles(latency), percentiles(serviceTime));
+    }
+
+    private static Map<String, Double> percentiles(Histogram histogram) {
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            percentiles.put(PERCENTILE_NAMES[i], VirtualThreadBenchmark.millis(histogram.getValueAtPercentile(PERCENTILES[i])));
+        }
+        percentiles.put("max", VirtualThreadBenchmark.millis(histogram.getMaxValue()));
+        return percentiles;
+    }
+
+    private static void write(Report report, Map<String, Histogram> histograms, File reportDir, String label)
+            throws IOException {
+        reportDir.mkdirs();
+        File json = new File(reportDir, label + ".json");
+        new ObjectMapper().findAndRegisterModules().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .enable(SerializationFeature.INDENT_OUTPUT).writeValue(json, report);
+
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>CashCard load test - ")
+                .append(label).append("</title>\n<style>body{font-family:sans-serif}table{border-collapse:collapse}")
+                .append("td,th{border:1px solid #ccc;padding:4px 8px;text-align:right}th:first-child,td:first-child{text-align:left}")
+                .append("</style></head><body>\n<h1>CashCard load test - ").append(label).append("</h1>\n<p>Started ")
+                .append(report.startedAt()).append(", achieved ").append(String.format("%.1f", report.achievedRatePerSecond()))
+                .append(" req/s</p>\n<h2>Configuration</h2>\n<table>\n");
+        report.configuration().forEach((key, value) -> html.append("<tr><td>").append(key).append("</td><td>")
+                .append(value).append("</td></tr>\n"));
+        html.append("</table>\n<h2>Latency from scheduled send, corrected for coordinated omission (ms)</h2>\n");
+        table(html, report, true);
+        html.append("<h2>Service time, from actual send (ms)</h2>\n");
+        table(html, report, false);
+        for (Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+            String distribution = distribution(histogram.getValue());
+            Files.writeString(new File(reportDir, label + "-" + histogram.getKey() + ".hgrm").toPath(), distribution);
+            html.append("<h2>").append(histogram.getKey()).append(" - percentile distribution (ms)</h2>\n<pre>")
+                    .append(distribution).append("</pre>\n");
+        }
+        html.append("</body></html>\n");
+        File page = new File(reportDir, label + ".html");
+        Files.writeString(page.toPath(), html);
+
+        OperationReport all = report.all();
+        System.out.printf("%d requests, %d errors, %.1f req/s  p50 %.2f ms  p99 %.2f ms  p99.9 %.2f ms  max %.2f ms%n",
+                all.requests(), all.errors(), all.throughputPerSecond(), all.latencyMillis().get("p50"),
+                all.latencyMillis().get("p99"), all.latencyMillis().get("p99.9"), all.latencyMillis().get("max"));
+        System.out.println("Reports written to " + json + " and " + page);
+    }
+
+    private static void table(StringBuilder html, Report report, boolean latency) {
+        html.append("<table>\n<tr><th>operation</th><th>requests</th><th>errors</th><th>req/s</th>");
+        report.all().latencyMillis().keySet().forEach(name -> html.append("<th>").append(name).append("</th>"));
+        html.append("</tr>\n");
+        List<OperationReport> rows = new ArrayList<>(report.operations());
+        rows.add(report.all());
+        for (OperationReport row : rows) {
+            html.append("<tr><td>").append(row.operation()).append("</td><td>").append(row.requests())
+                    .append("</td><td>").append(row.errors()).append("</td><td>")
+                    .append(String.format("%.1f", row.throughputPerSecond())).append("</td>");
+            (latency ? row.latencyMillis() : row.serviceTimeMillis()).values()
+                    .forEach(value -> html.append("<td>").append(String.format("%.2f", value)).append("</td>"));
+            html.append("</tr>\n");
+        }
+        html.append("</table>\n");
+    }
+
+    // HdrHistogram's own percentile distribution format, readable by its plotter, in milliseconds
+    private static String distribution(Histogram histogram) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        histogram.outputPercentileDistribution(new PrintStream(out, true, StandardCharsets.UTF_8), 1_000_000.0);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
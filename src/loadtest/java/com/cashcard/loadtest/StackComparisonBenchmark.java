@@ -0,0 +1,160 @@
+package com.cashcard.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Spring MVC (Tomcat, JDBC) vs Spring WebFlux (Netty, R2DBC) under the same closed-model load as "VirtualThreadBenchmark".
+// Each stack runs in its own JVM, started from its own classpath (passed in by the "stackComparisonBenchmark" task),
+// so the memory each one needs can be read from the operating system: resident set size (RSS) at rest after seeding,
+// and the peak while every client holds a connection open. The difference divided by the number of clients is
+// the memory cost of one concurrent connection.
+//
+// Reports throughput, latency percentiles and memory per (stack, concurrency) to stdout and as JSON.
+public class StackComparisonBenchmark {
+    private static final String AUTHORIZATION = "Basic " + Base64.getEncoder()
+            .encodeToString("wilson:abc123".getBytes(StandardCharsets.UTF_8));
+    private static final int SEEDED_CARDS = 1000;
+
+    record Stack(String name, String classpathProperty, String mainClass, List<String> arguments) {
+    }
+
+    record Result(VirtualThreadBenchmark.Result load, long idleRssBytes, long peakRssBytes, long bytesPerConnection) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> concurrencyLevels = Arrays.stream(VirtualThreadBenchmark.option(args, "concurrency", "1000,10000").split(","))
+                .map(String::trim).map(Integer::valueOf).toList();
+        Duration duration = Duration.ofSeconds(Long.parseLong(VirtualThreadBenchmark.option(args, "duration", "20")));
+        File report = new File(VirtualThreadBenchmark.option(args, "report", "build/reports/loadtest/stack-comparison.json"));
+
+        List<Stack> stacks = List.of(
+                new Stack("mvc", "cashcard.mvc.classpath", "com.cashcard.CashCardApplication",
+                        List.of("--server.tomcat.max-connections=20000", "--server.tomcat.accept-count=1000",
+                                // The reactive variant has no admission control, compare like with like
+                                "--cashcard.admission.enabled=false")),
+                new Stack("reactive", "cashcard.reactive.classpath", "com.cashcard.reactive.ReactiveCashCardApplication",
+                        List.of()));
+
+        List<Result> results = new ArrayList<>();
+        for (Stack stack : stacks) {
+            int port = freePort();
+            Process app = start(stack, port);
+            try {
+                awaitHealthy(port);
+                List<Long> ids = seed(port);
+                for (int concurrency : concurrencyLevels) {
+                    // Warm up the JIT, caches and connection pools before measuring
+                    VirtualThreadBenchmark.drive(port, ids, concurrency, duration.dividedBy(4), stack.name());
+                    long idleRss = VirtualThreadBenchmark.rss(app.pid());
+
+                    AtomicLong peakRss = new AtomicLong(idleRss);
+                    Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+                        while (!Thread.currentThread().isInterrupted()) {
+                            peakRss.accumulateAndGet(VirtualThreadBenchmark.rss(app.pid()), Math::max);
+                            try {
+                                Thread.sleep(100);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                    });
+                    VirtualThreadBenchmark.Result load = VirtualThreadBenchmark.drive(port, ids, concurrency, duration, stack.name());
+                    sampler.interrupt();
+                    sampler.join();
+
+                    long perConnection = Math.max(0, peakRss.get() - idleRss) / concurrency;
+                    results.add(new Result(load, idleRss, peakRss.get(), perConnection));
+                    System.out.printf("%-8s %6d clients: %10.0f req/s  p50 %8.2f ms  p99 %8.2f ms  errors %d  " +
+                                    "RSS %6d -> %6d MiB (%d KiB per connection)%n",
+                            stack.name(), concurrency, load.throughputPerSecond(), load.p50Millis(), load.p99Millis(),
+                            load.errors(), idleRss >> 20, peakRss.get() >> 20, perConnection >> 10);
+                }
+            } finally {
+                app.destroy();
+                if (!app.waitFor(30, TimeUnit.SECONDS)) {
+                    app.destroyForcibly();
+                }
+            }
+        }
+
+        report.getParentFile().mkdirs();
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report, results);
+        System.out.println("Report written to " + report);
+    }
+
+    private static Process start(Stack stack, int port) throws IOException {
+        String classpath = System.getProperty(stack.classpathProperty());
+        if (classpath == null) {
+            throw new IllegalStateException("Missing system property " + stack.classpathProperty()
+                    + " - run this through the \"stackComparisonBenchmark\" Gradle task");
+        }
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<String> command = new ArrayList<>(List.of(java, "-cp", classpath, stack.mainClass(),
+                "--server.port=" + port, "--logging.level.root=WARN"));
+        command.addAll(stack.arguments());
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    private static void awaitHealthy(int port) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(120);
+        try (HttpClient httpClient = HttpClient.newHttpClient()) {
+            while (System.nanoTime() < deadline) {
+                try {
+                    HttpResponse<Void> response = httpClient.send(
+                            HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/health")).build(),
+                            HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() == 200) {
+                        return;
+                    }
+                } catch (IOException notListeningYet) {
+                    // Keep polling until the application has started
+                }
+                Thread.sleep(250);
+            }
+        }
+        throw new IllegalStateException("Application on port " + port + " did not become healthy");
+    }
+
+    // Both stacks are seeded the same way, through POST /cashcards - neither exposes its database to this process
+    private static List<Long> seed(int port) throws IOException, InterruptedException {
+        List<Long> ids = new ArrayList<>(SEEDED_CARDS);
+        try (HttpClient httpClient = HttpClient.newHttpClient()) {
+            for (int i = 0; i < SEEDED_CARDS; i++) {
+                String body = "{\"amount\": " + i + ".99}";
+                HttpResponse<Void> response = httpClient.send(
+                        HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/cashcards"))
+                                .header("Authorization", AUTHORIZATION)
+                                .header("Content-Type", "application/json")
+                                .POST(HttpRequest.BodyPublishers.ofString(body))
+                                .build(),
+                        HttpResponse.BodyHandlers.discarding());
+                String location = response.headers().firstValue("Location")
+                        .orElseThrow(() -> new IllegalStateException("Seeding failed with status " + response.statusCode()));
+                ids.add(Long.valueOf(location.substring(location.lastIndexOf('/') + 1)));
+            }
+        }
+        return ids;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.cashcard.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cold start of the packaged application, the way an autoscaler sees it: from launching the JVM to the first
+// successful "GET /cashcards/{id}" (200 OK, so through security, the repository and the database).
+// Runs each startup mode "runs" times, in a fresh JVM every time, and reports the median and best time to that first
+// answer and the resident set size (RSS) right after it.
+// With "--train-cds-archive=<file>" it does the training run for "gradle cdsArchive" instead: one start in the mode the
+// archive is used with, up to that first answer - so the archive holds every class the measured request needs.
+public class StartupBenchmark {
+    private static final String AUTHORIZATION = "Basic " + Base64.getEncoder()
+            .encodeToString("wilson:abc123".getBytes(StandardCharsets.UTF_8));
+
+    record Mode(String name, List<String> jvmArguments, List<String> applicationArguments) {
+    }
+
+    record Result(String mode, List<Double> firstResponseMillis, double medianMillis, double bestMillis,
+                  long medianRssBytes) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String java = VirtualThreadBenchmark.option(args, "java", "java");
+        String application = VirtualThreadBenchmark.option(args, "application", "build/cds/application/cashcard.jar");
+        String cdsArchive = VirtualThreadBenchmark.option(args, "cds-archive", "build/cds/application/application.jsa");
+        int runs = Integer.parseInt(VirtualThreadBenchmark.option(args, "runs", "5"));
+        File report = new File(VirtualThreadBenchmark.option(args, "report", "build/reports/loadtest/startup.json"));
+        String trainCdsArchive = VirtualThreadBenchmark.option(args, "train-cds-archive", null);
+
+        String aot = "-Dspring.aot.enabled=true";
+        String cds = "-XX:SharedArchiveFile=" + cdsArchive;
+        String lazy = "--spring.profiles.active=fast-startup";
+        List<Mode> modes = List.of(
+                new Mode("default", List.of(), List.of()),
+                new Mode("aot", List.of(aot), List.of()),
+                new Mode("aot+cds", List.of(aot, cds), List.of()),
+                new Mode("lazy", List.of(), List.of(lazy)),
+                new Mode("aot+cds+lazy", List.of(aot, cds), List.of(lazy)));
+
+        // The database starts empty outside of tests - give it the card the first request asks for
+        Path data = Files.createTempFile("cashcard-startup", ".sql");
+        Files.writeString(data, "INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (99, 12345, 'wilson');\n");
+
+        List<Result> results = new ArrayList<>();
+        try {
+            if (trainCdsArchive != null) {
+                // Not lazy: the archive then also has the classes that only the eager modes load at startup.
+                // The JVM writes the archive as it exits, once the application has been stopped after its first answer.
+                Path archive = Path.of(trainCdsArchive);
+                Files.deleteIfExists(archive);
+                measure(java, application, new Mode("cds-training",
+                        List.of(aot, "-XX:ArchiveClassesAtExit=" + archive, "-Xlog:cds=off"), List.of()), data);
+                if (!Files.exists(archive)) {
+                    throw new IllegalStateException("The training run did not write " + archive);
+                }
+                System.out.println("CDS archive written to " + archive);
+                return;
+            }
+            for (Mode mode : modes) {
+                List<Double> millis = new ArrayList<>();
+                List<Long> rss = new ArrayList<>();
+                for (int run = 0; run < runs; run++) {
+                    long[] measured = measure(java, application, mode, data);
+                    millis.add(VirtualThreadBenchmark.millis(measured[0]));
+                    rss.add(measured[1]);
+                }
+                List<Double> sortedMillis = millis.stream().sorted().toList();
+                Result result = new Result(mode.name(), millis, sortedMillis.get(runs / 2), sortedMillis.get(0),
+                        rss.stream().sorted().toList().get(runs / 2));
+                results.add(result);
+                System.out.printf("%-14s first response: median %7.0f ms  best %7.0f ms  RSS %4d MiB%n",
+                        mode.name(), result.medianMillis(), result.bestMillis(), result.medianRssBytes() >> 20);
+            }
+        } finally {
+            Files.deleteIfExists(data);
+        }
+
+        report.getParentFile().mkdirs();
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report, results);
+        System.out.println("Report written to " + report);
+    }
+
+    // Returns the nanoseconds from launch to the first 200 OK, and the RSS right after it
+    private static long[] measure(String java, String application, Mode mode, Path data) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>(List.of(java));
+        command.addAll(mode.jvmArguments());
+        command.addAll(List.of("-jar", application,
+                "--server.port=" + port,
+                "--logging.level.root=WARN",
+                "--spring.main.banner-mode=off",
+                "--spring.sql.init.data-locations=file:" + data.toAbsolutePath()));
+        command.addAll(mode.applicationArguments());
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/cashcards/99"))
+                .header("Authorization", AUTHORIZATION)
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        long launched = System.nanoTime();
+        Process app = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        try (HttpClient httpClient = HttpClient.newHttpClient()) {
+            long deadline = launched + TimeUnit.SECONDS.toNanos(120);
+            while (System.nanoTime() < deadline && app.isAlive()) {
+                try {
+                    if (httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        long firstResponse = System.nanoTime() - launched;
+                        return new long[]{firstResponse, VirtualThreadBenchmark.rss(app.pid())};
+                    }
+                } catch (IOException notListeningYet) {
+                    // Keep polling until the application answers
+                }
+                Thread.sleep(5);
+            }
+            throw new IllegalStateException("Mode " + mode.name() + " did not answer GET /cashcards/99 with 200 OK");
+        } finally {
+            app.destroy();
+            if (!app.waitFor(30, TimeUnit.SECONDS)) {
+                app.destroyForcibly();
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.cashcard.loadtest;
+
+import com.cashcard.CashCardApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Closed-model benchmark: N clients, each sending GET /cashcards/{id} back to back for a fixed time.
+// The application is started in-process twice - once with Tomcat's platform thread pool, once in the
+// "virtual-threads" profile - and driven at every requested concurrency level.
+// Clients always run on virtual threads, so the client side is never what runs out of threads.
+//
+// Reports throughput and latency percentiles per (mode, concurrency) to stdout and as JSON.
+public class VirtualThreadBenchmark {
+    private static final String AUTHORIZATION = "Basic " + Base64.getEncoder()
+            .encodeToString("wilson:abc123".getBytes(StandardCharsets.UTF_8));
+    private static final int SEEDED_CARDS = 1000;
+
+    record Result(String mode, int concurrency, long requests, long errors, double throughputPerSecond,
+                  double p50Millis, double p99Millis, double p999Millis, double maxMillis) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> concurrencyLevels = Arrays.stream(option(args, "concurrency", "1000,10000").split(","))
+                .map(String::trim).map(Integer::valueOf).toList();
+        Duration duration = Duration.ofSeconds(Long.parseLong(option(args, "duration", "20")));
+        File report = new File(option(args, "report", "build/reports/loadtest/virtual-threads.json"));
+
+        List<Result> results = new ArrayList<>();
+        for (String mode : List.of("platform", "virtual")) {
+            try (ConfigurableApplicationContext app = start(mode.equals("virtual"))) {
+                int port = app.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+                List<Long> ids = seed(app.getBean(JdbcTemplate.class));
+                for (int concurrency : concurrencyLevels) {
+                    // Warm up the JIT, caches and connection pools before measuring
+                    drive(port, ids, concurrency, duration.dividedBy(4), mode);
+                    Result result = drive(port, ids, concurrency, duration, mode);
+                    results.add(result);
+                    System.out.printf("%-8s %6d clients: %10.0f req/s  p50 %8.2f ms  p99 %8.2f ms  p99.9 %8.2f ms  errors %d%n",
+                            mode, concurrency, result.throughputPerSecond(), result.p50Millis(), result.p99Millis(),
+                            result.p999Millis(), result.errors());
+                }
+            }
+        }
+
+        report.getParentFile().mkdirs();
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report, results);
+        System.out.println("Report written to " + report);
+    }
+
+    private static ConfigurableApplicationContext start(boolean virtualThreads) {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(CashCardApplication.class)
+                .properties(
+                        "server.port=0",
+                        "server.tomcat.max-connections=20000",
+                        "server.tomcat.accept-count=1000",
+                        "logging.level.root=WARN");
+        if (virtualThreads) {
+            builder.profiles("virtual-threads");
+        }
+        // A command line argument, to take precedence over application.properties -
+        // every client is the same owner, far past any per-owner rate limit
+        return builder.run("--cashcard.admission.enabled=false");
+    }
+
+    private static List<Long> seed(JdbcTemplate jdbcTemplate) {
+        List<Object[]> rows = new ArrayList<>(SEEDED_CARDS);
+        for (int i = 0; i < SEEDED_CARDS; i++) {
+            rows.add(new Object[]{i * 100L + 99, "wilson"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO cash_card (amount, owner) VALUES (?, ?)", rows);
+        return jdbcTemplate.queryForList("SELECT id FROM cash_card WHERE owner = 'wilson'", Long.class);
+    }
+
+    static Result drive(int port, List<Long> ids, int concurrency, Duration duration, String mode)
+            throws InterruptedException {
+        Recorder recorder = new Recorder(3);
+        LongAdder errors = new LongAdder();
+        long deadline = System.nanoTime() + duration.toNanos();
+
+        try (ExecutorService httpExecutor = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient httpClient = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .executor(httpExecutor)
+                     .connectTimeout(Duration.ofSeconds(30))
+                     .build()) {
+            ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+            long start = System.nanoTime();
+            for (int i = 0; i < concurrency; i++) {
+                clients.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        long id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/cashcards/" + id))
+                                .header("Authorization", AUTHORIZATION)
+                                .timeout(Duration.ofSeconds(60))
+                                .build();
+                        long sent = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors.increment();
+                            }
+                        } catch (IOException e) {
+                            errors.increment();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        recorder.recordValue(System.nanoTime() - sent);
+                    }
+                });
+            }
+            clients.shutdown();
+            clients.awaitTermination(duration.toSeconds() + 120, TimeUnit.SECONDS);
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Histogram histogram = recorder.getIntervalHistogram();
+            return new Result(mode, concurrency, histogram.getTotalCount(), errors.sum(),
+                    histogram.getTotalCount() / seconds,
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+        }
+    }
+
+    static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    static String option(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        return Arrays.stream(args)
+                .filter(arg -> arg.startsWith(prefix))
+                .map(arg -> arg.substring(prefix.length()))
+                .findFirst()
+                .orElse(defaultValue);
+    }
+
+    // Resident set size of a process, from /proc - 0 where that is not available (not Linux)
+    static long rss(long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", Long.toString(pid), "status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Fall through
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,203 @@
+package com.cashcard;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+// Admission control for "/cashcards" requests, placed in the security filter chain right after authentication,
+// so one owner hammering the API cannot take the request threads and database connections everybody else needs.
+//
+// Two checks, both before any handler or database work is done:
+// 1. Per owner and endpoint, a token bucket ("GcraRateLimiter") - over the limit is "429 TOO MANY REQUESTS"
+// 2. Across all owners, at most "max-concurrent" requests run at once and at most "max-queued" wait for a slot,
+//    each for no longer than "queue-timeout" - anything beyond that is "503 SERVICE UNAVAILABLE"
+// Both answers carry "Retry-After", and every rejection is counted in "cashcard.admission.rejected".
+class AdmissionControlFilter extends OncePerRequestFilter {
+    private static final RequestMatcher CASH_CARDS = new AntPathRequestMatcher("/cashcards/**");
+    // Change feed streams stay open for minutes while doing nothing - they must not sit on a "max-concurrent" slot
+    private static final RequestMatcher CHANGE_FEED = new AntPathRequestMatcher("/cashcards/changes", "GET");
+
+    private final AdmissionControlProperties properties;
+    // Per endpoint, in configured order, followed by one entry for the default limit
+    private final List<RequestMatcher> endpointMatchers = new ArrayList<>();
+    private final double[] rates;
+    private final int[] bursts;
+    private final GcraRateLimiter<BucketKey> rateLimiter;
+    private final Semaphore running;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final long queueTimeoutNanos;
+    private final Counter[] rateLimited;
+    private final Counter overloaded;
+
+    // An owner's bucket for one endpoint (the last index for all the endpoints without limits of their own)
+    private record BucketKey(String owner, int endpoint) {
+    }
+
+    AdmissionControlFilter(AdmissionControlProperties properties, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.properties = properties;
+        this.rateLimiter = new GcraRateLimiter<>(properties.maxBuckets(), nanoTime);
+        this.running = new Semaphore(properties.maxConcurrent());
+        this.queueTimeoutNanos = properties.queueTimeout().toNanos();
+
+        // Counters are registered up front, so rejecting a request does not look up or allocate a meter
+        List<AdmissionControlProperties.Endpoint> endpoints = properties.endpoints();
+        this.rates = new double[endpoints.size() + 1];
+        this.bursts = new int[endpoints.size() + 1];
+        this.rateLimited = new Counter[endpoints.size() + 1];
+        for (int i = 0; i < endpoints.size(); i++) {
+            AdmissionControlProperties.Endpoint endpoint = endpoints.get(i);
+            endpointMatchers.add(new AntPathRequestMatcher(endpoint.path(), endpoint.method()));
+            rates[i] = endpoint.rate();
+            bursts[i] = endpoint.burst();
+            rateLimited[i] = rejected(meterRegistry, "rate-limited", endpoint.name());
+        }
+        rates[endpoints.size()] = properties.defaultLimit().rate();
+        bursts[endpoints.size()] = properties.defaultLimit().burst();
+        rateLimited[endpoints.size()] = rejected(meterRegistry, "rate-limited", "default");
+        this.overloaded = rejected(meterRegistry, "overloaded", "all");
+
+        Gauge.builder("cashcard.admission.running", running, semaphore -> properties.maxConcurrent() - semaphore.availablePermits())
+                .description("Requests holding one of the \"max-concurrent\" slots")
+                .register(meterRegistry);
+        Gauge.builder("cashcard.admission.queued", queued, AtomicInteger::get)
+                .description("Requests waiting for a slot")
+                .register(meterRegistry);
+        meterRegistry.gauge("cashcard.admission.buckets", rateLimiter, GcraRateLimiter::size);
+    }
+
+    private static Counter rejected(MeterRegistry meterRegistry, String reason, String endpoint) {
+        return Counter.builder("cashcard.admission.rejected")
+                .description("Requests shed by admission control before reaching a handler")
+                .tag("reason", reason)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !CASH_CARDS.matches(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // Requests without credentials are left to the authorization filter further down, which rejects them
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()) {
+            int endpoint = endpointOf(request);
+            long waitNanos = rateLimiter.tryAcquire(new BucketKey(authentication.getName(), endpoint),
+                    rates[endpoint], bursts[endpoint]);
+            if (waitNanos > 0) {
+                rateLimited[endpoint].increment();
+                reject(response, HttpStatus.TOO_MANY_REQUESTS, waitNanos);
+                return;
+            }
+        }
+
+        if (!acquireSlot()) {
+            overloaded.increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, queueTimeoutNanos);
+            return;
+        }
+        Release release = new Release();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            // A streamed response (the export) keeps its slot until it is written completely
+            if (request.isAsyncStarted() && !CHANGE_FEED.matches(request)) {
+                request.getAsyncContext().addListener(release);
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    private int endpointOf(HttpServletRequest request) {
+        for (int i = 0; i < endpointMatchers.size(); i++) {
+            if (endpointMatchers.get(i).matches(request)) {
+                return i;
+            }
+        }
+        return endpointMatchers.size();
+    }
+
+    private boolean acquireSlot() {
+        if (running.tryAcquire()) {
+            return true;
+        }
+        // Bounded queue - once it is full, shedding straight away beats making callers wait only to fail anyway
+        if (queued.incrementAndGet() > properties.maxQueued()) {
+            queued.decrementAndGet();
+            return false;
+        }
+        try {
+            return running.tryAcquire(queueTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    // "Retry-After" is in whole seconds, rounded up so a client that honours it is never early
+    private static void reject(HttpServletResponse response, HttpStatus status, long waitNanos) {
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+    }
+
+    // Gives the slot back exactly once - whether the request ends on its thread or asynchronously
+    private final class Release implements Runnable, AsyncListener {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        @Override
+        public void run() {
+            if (released.compareAndSet(false, true)) {
+                running.release();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // The request went asynchronous again - "onComplete" still follows
+        }
+    }
+}
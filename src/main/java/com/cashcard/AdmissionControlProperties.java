@@ -0,0 +1,31 @@
+package com.cashcard;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+// "cashcard.admission.*" - limits applied by "AdmissionControlFilter" to "/cashcards" requests.
+// Each owner gets a token bucket per endpoint: "rate" requests per second on average, with bursts of up to "burst".
+// Endpoints are matched in order, the first one whose method and path match wins; anything else uses "default-limit".
+@ConfigurationProperties("cashcard.admission")
+record AdmissionControlProperties(
+        @DefaultValue("true") boolean enabled,
+        // Requests allowed to run at once across all owners - keep it below the Tomcat and JDBC pool sizes
+        @DefaultValue("32") int maxConcurrent,
+        // Requests allowed to wait for one of those slots; beyond that they are shed at once
+        @DefaultValue("64") int maxQueued,
+        @DefaultValue("200ms") Duration queueTimeout,
+        // Most owner/endpoint buckets kept in memory
+        @DefaultValue("100000") int maxBuckets,
+        @DefaultValue Limit defaultLimit,
+        @DefaultValue List<Endpoint> endpoints) {
+
+    record Limit(@DefaultValue("50") double rate, @DefaultValue("100") int burst) {
+    }
+
+    // "method" may be left out to match every method
+    record Endpoint(String name, String method, String path, double rate, int burst) {
+    }
+}
@@ -0,0 +1,190 @@
+package com.cashcard;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Sits in front of the BCrypt-verifying "DaoAuthenticationProvider" and remembers successful Basic-auth checks.
+// HTTP Basic sends the password on every request, so without this each request pays a full BCrypt verification.
+//
+// Only an HMAC-SHA256 digest of the password is kept, under a random key that never leaves this process,
+// so the cache holds nothing an attacker could replay or crack offline.
+// Failed logins are never cached - guessing passwords still costs a BCrypt verification per attempt.
+// Public because the reactive variant of the API (com.cashcard.reactive) puts the same cache in front of its logins.
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final AuthenticationProvider delegate;
+    private final UserDetailsService userDetailsService;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final SecretKeySpec digestKey;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // Earliest expiry among the entries left by the last sweep of a full cache - racy updates only cost an extra sweep
+    private volatile long nextExpiryMillis;
+    private final Counter hits;
+    private final Counter misses;
+
+    // "encodedPassword" is the stored BCrypt hash at the time of the check.
+    // A password change gives the user a new hash, which no longer matches and turns the entry into a miss.
+    private record Entry(byte[] digest, String encodedPassword, long expiresAtMillis) {
+    }
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegate, UserDetailsService userDetailsService,
+                                         int maxSize, Duration ttl, MeterRegistry meterRegistry, Clock clock) {
+        this.delegate = delegate;
+        this.userDetailsService = userDetailsService;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.digestKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+
+        this.hits = Counter.builder("cashcard.auth.credential.cache")
+                .description("Basic-auth checks answered from the credential cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("cashcard.auth.credential.cache")
+                .description("Basic-auth checks that needed a full password verification")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        meterRegistry.gaugeMapSize("cashcard.auth.credential.cache.size", Tags.empty(), entries);
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        String username = authentication.getName();
+        Object credentials = authentication.getCredentials();
+        if (username == null || !(credentials instanceof String password)) {
+            return delegate.authenticate(authentication);
+        }
+
+        byte[] digest = digest(username, password);
+        long now = clock.millis();
+
+        Entry entry = entries.get(username);
+        if (entry != null) {
+            if (entry.expiresAtMillis() <= now) {
+                entries.remove(username, entry);
+            } else if (MessageDigest.isEqual(entry.digest(), digest)) {
+                Authentication cached = authenticateFromCache(authentication, entry);
+                if (cached != null) {
+                    hits.increment();
+                    return cached;
+                }
+                // The user has changed since the entry was made - it is of no more use
+                entries.remove(username, entry);
+            }
+            // A different password leaves the entry alone: it is most likely a wrong one, and removing the entry would let
+            // anybody who sends bad passwords for a user make that user's own requests pay for BCrypt again.
+            // A new password that is right replaces the entry below.
+        }
+
+        misses.increment();
+        Authentication result = delegate.authenticate(authentication);
+        if (result != null && result.getPrincipal() instanceof UserDetails user) {
+            store(username, new Entry(digest, user.getPassword(), now + ttlMillis));
+        }
+        return result;
+    }
+
+    // The user is loaded again on every hit (a cheap lookup compared to BCrypt) so that role changes and
+    // disabled or locked accounts take effect immediately, while only the password verification is skipped
+    private Authentication authenticateFromCache(Authentication authentication, Entry entry) {
+        UserDetails user;
+        try {
+            user = userDetailsService.loadUserByUsername(authentication.getName());
+        } catch (UsernameNotFoundException e) {
+            return null;
+        }
+        if (user == null
+                || !entry.encodedPassword().equals(user.getPassword())
+                || !user.isEnabled()
+                || !user.isAccountNonLocked()
+                || !user.isAccountNonExpired()
+                || !user.isCredentialsNonExpired()) {
+            return null;
+        }
+        UsernamePasswordAuthenticationToken result = UsernamePasswordAuthenticationToken.authenticated(
+                user, authentication.getCredentials(), user.getAuthorities());
+        result.setDetails(authentication.getDetails());
+        return result;
+    }
+
+    private void store(String username, Entry entry) {
+        if (entries.size() >= maxSize && !entries.containsKey(username)) {
+            long now = clock.millis();
+            // Sweeping cannot free anything before the earliest expiry the last sweep saw - entries added since expire later.
+            // A cache full of live entries is therefore swept once per expiry, not on every login that finds it full.
+            if (now >= nextExpiryMillis) {
+                sweep(now);
+            }
+            // Still full of live entries - leave this user uncached rather than grow past the bound
+            if (entries.size() >= maxSize) {
+                return;
+            }
+        }
+        entries.put(username, entry);
+    }
+
+    private void sweep(long now) {
+        long earliest = Long.MAX_VALUE;
+        for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+            long expiresAtMillis = iterator.next().expiresAtMillis();
+            if (expiresAtMillis <= now) {
+                iterator.remove();
+            } else {
+                earliest = Math.min(earliest, expiresAtMillis);
+            }
+        }
+        nextExpiryMillis = earliest;
+    }
+
+    // Drops the cached check for one user, e.g. after an administrative password reset
+    void evict(String username) {
+        entries.remove(username);
+    }
+
+    void evictAll() {
+        entries.clear();
+    }
+
+    private byte[] digest(String username, String password) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(digestKey);
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 is a mandatory JCA algorithm, so this cannot happen on a compliant JVM
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+}
@@ -1,6 +1,28 @@
 package com.cashcard;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.annotation.Nulls;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 
-public record CashCard(@Id Long id, Double amount, String owner) {
+// "amount" is held in minor units (cents) as a primitive "long" - exact, and no boxing when cards are read or sorted.
+// The JSON body still carries a decimal number ("123.45"), see "MinorUnitsJson". A body without an amount is rejected
+// instead of silently becoming 0.
+// "version" is bumped by every update and used for optimistic concurrency.
+// It is not part of the JSON body - clients see it as the "ETag" header of GET /cashcards/{id} and send it back in "If-Match".
+public record CashCard(@Id Long id,
+                       @JsonProperty(required = true) @JsonSetter(nulls = Nulls.FAIL)
+                       @JsonSerialize(using = MinorUnitsJson.Serializer.class)
+                       @JsonDeserialize(using = MinorUnitsJson.Deserializer.class) long amount,
+                       String owner,
+                       @Version @JsonIgnore Long version) {
+
+    // A card that has not been stored yet, or a request body - no version
+    public CashCard(Long id, long amount, String owner) {
+        this(id, amount, owner, null);
+    }
 }
@@ -0,0 +1,16 @@
+package com.cashcard;
+
+import java.util.List;
+
+// Custom fragment of "CashCardRepository" for bulk writes that Spring Data cannot derive from a method name.
+// Spring Data finds the implementation by the "Impl" suffix ("CashCardBatchOperationsImpl") and mixes it into the repository.
+public interface CashCardBatchOperations {
+
+    // Inserts one new "CashCard" per amount (in cents) for "owner" using a single JDBC batch in one transaction.
+    // Returns the generated ids, in the same order as "amounts".
+    List<Long> insertAll(String owner, long[] amounts);
+
+    // Updates the amount of every card in "cashCards" that belongs to "owner", using a single JDBC batch in one transaction.
+    // Returns the number of rows each update changed, in the same order as "cashCards" - 0 means not found for this owner.
+    int[] updateAmounts(String owner, List<CashCard> cashCards);
+}
@@ -0,0 +1,91 @@
+package com.cashcard;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Plain JDBC batches - one prepared statement, many parameter sets, one round trip to the database per chunk
+class CashCardBatchOperationsImpl implements CashCardBatchOperations {
+    private static final String INSERT = "INSERT INTO cash_card (amount, owner) VALUES (?, ?)";
+    // "owner = ?" enforces ownership for the whole batch in the same statement,
+    // a card owned by someone else simply reports 0 updated rows
+    private static final String UPDATE = "UPDATE cash_card SET amount = ?, version = version + 1 WHERE id = ? AND owner = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CacheManager cacheManager;
+
+    CashCardBatchOperationsImpl(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, CacheManager cacheManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public List<Long> insertAll(String owner, long[] amounts) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT, new String[]{"ID"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setLong(1, amounts[i]);
+                        ps.setString(2, owner);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return amounts.length;
+                    }
+                },
+                keyHolder));
+
+        List<Long> ids = new ArrayList<>(amounts.length);
+        for (Map<String, Object> keys : keyHolder.getKeyList()) {
+            ids.add(((Number) keys.values().iterator().next()).longValue());
+        }
+        // A lookup of one of these ids before it existed may have cached a "not found" - drop it
+        evict(owner, ids);
+        return ids;
+    }
+
+    @Override
+    public int[] updateAmounts(String owner, List<CashCard> cashCards) {
+        int[] updated = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(UPDATE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                CashCard cashCard = cashCards.get(i);
+                ps.setLong(1, cashCard.amount());
+                ps.setLong(2, cashCard.id());
+                ps.setString(3, owner);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return cashCards.size();
+            }
+        }));
+
+        // Evict only after the commit, so the next read loads the new amounts
+        evict(owner, cashCards.stream().map(CashCard::id).toList());
+        return updated;
+    }
+
+    private void evict(String owner, List<Long> ids) {
+        Cache cache = cacheManager.getCache(CashCardCacheConfig.CASH_CARDS);
+        if (cache != null) {
+            ids.forEach(id -> cache.evict(new SimpleKey(id, owner)));
+        }
+    }
+}
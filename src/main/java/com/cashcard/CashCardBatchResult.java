@@ -0,0 +1,6 @@
+package com.cashcard;
+
+// Outcome of one item of a batch request
+// "index" is the item's position in the request body, "status" is the HTTP status the single-item endpoint would have returned
+public record CashCardBatchResult(int index, Long id, int status) {
+}
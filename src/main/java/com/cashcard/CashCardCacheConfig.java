@@ -0,0 +1,14 @@
+package com.cashcard;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+// Turns on Spring's cache abstraction, which "CashCardRepository" uses to keep hot cards in memory.
+// The cache provider is pluggable: Caffeine by default (size and TTL eviction are set by "spring.cache.caffeine.spec"),
+// and "spring.cache.type=none" switches caching off without touching any code.
+@Configuration
+@EnableCaching
+public class CashCardCacheConfig {
+    // Entries are keyed by (id, owner), matching the parameters of "findByIdAndOwner"
+    public static final String CASH_CARDS = "cashCards";
+}
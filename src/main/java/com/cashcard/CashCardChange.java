@@ -0,0 +1,27 @@
+package com.cashcard;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+// One event of GET /cashcards/changes. "type" is also the SSE event name:
+// - "created" / "updated" - the card's id and new amount, and its version (the "ETag") when the write knew it
+// - "ready"               - first event of a new stream, nothing to report yet
+// - "reset"               - the events since "Last-Event-ID" are no longer available, re-read GET /cashcards
+// Fields that do not apply are left out.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+record CashCardChange(String type,
+                      Long id,
+                      @JsonSerialize(using = MinorUnitsJson.Serializer.class) Long amount,
+                      Long version) {
+
+    static final CashCardChange READY = new CashCardChange("ready", null, null, null);
+    static final CashCardChange RESET = new CashCardChange("reset", null, null, null);
+
+    static CashCardChange created(long id, long amount, Long version) {
+        return new CashCardChange("created", id, amount, version);
+    }
+
+    static CashCardChange updated(long id, long amount, Long version) {
+        return new CashCardChange("updated", id, amount, version);
+    }
+}
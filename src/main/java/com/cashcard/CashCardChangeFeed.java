@@ -0,0 +1,307 @@
+package com.cashcard;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In-process fan-out of card changes to the owner's GET /cashcards/changes streams (server-sent events).
+//
+// Each owner with subscribers has a feed: a ring of its last "buffer-size" events, numbered 1, 2, 3, ... and the
+// subscribers to send new ones to. Event ids are "<feed epoch>:<number>", so a client reconnecting with
+// "Last-Event-ID" gets every event it missed from the ring - or a "reset" event if they have been overwritten,
+// or the id comes from an earlier feed (the server restarted, or the feed expired after "retention").
+//
+// An open stream is an async request, not a thread. Writes to a subscriber go through its own bounded queue, drained by
+// a virtual thread only while there is something to send, so a publishing request never waits on a slow client.
+// A subscriber with "subscriber-queue" new events waiting is disconnected - it reconnects and catches up from the ring.
+// Replayed events do not count towards that limit, or a client catching up would be cut off again by the next event.
+//
+// Only changes made through this application instance are seen. Events are published once a write has returned, so two
+// concurrent writes to the same card may be delivered in either order - "version", where present, tells the newer one.
+@Component
+@EnableConfigurationProperties(ChangeFeedProperties.class)
+class CashCardChangeFeed implements DisposableBean {
+    private final ChangeFeedProperties properties;
+    private final ObjectWriter changeWriter;
+    private final ConcurrentHashMap<String, OwnerFeed> feeds = new ConcurrentHashMap<>();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("cashcard-changes-heartbeat").daemon().factory());
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final Counter slowSubscribers;
+
+    CashCardChangeFeed(ChangeFeedProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.changeWriter = objectMapper.writerFor(CashCardChange.class);
+        meterRegistry.gauge("cashcard.changes.subscribers", subscriberCount);
+        this.slowSubscribers = Counter.builder("cashcard.changes.disconnected")
+                .description("Change feed subscribers disconnected for falling too far behind")
+                .tag("reason", "slow")
+                .register(meterRegistry);
+        long period = properties.heartbeat().toMillis();
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Opens a stream for "owner", first replaying what came after "lastEventId" (if given).
+    // Returns null when the owner already has "max-subscribers-per-owner" streams open.
+    SseEmitter subscribe(String owner, String lastEventId) {
+        while (true) {
+            OwnerFeed feed = feeds.computeIfAbsent(owner, unused -> new OwnerFeed());
+            synchronized (feed) {
+                // Lost a race with the sweep in "heartbeat" - this feed is gone, start over with a new one
+                if (feed.removed) {
+                    continue;
+                }
+                if (feed.subscribers.size() >= properties.maxSubscribersPerOwner()) {
+                    return null;
+                }
+                return feed.subscribe(lastEventId);
+            }
+        }
+    }
+
+    // Whether anybody could receive events of "owner" - lets callers skip reads they would only need for an event
+    boolean isWatched(String owner) {
+        return feeds.containsKey(owner);
+    }
+
+    // Records the change and queues it for the owner's open streams. Owners nobody listens to are skipped right away.
+    void publish(String owner, CashCardChange change) {
+        OwnerFeed feed = feeds.get(owner);
+        if (feed != null) {
+            String data = toJson(change);
+            synchronized (feed) {
+                feed.publish(change.type(), data);
+            }
+        }
+    }
+
+    private String toJson(CashCardChange change) {
+        try {
+            return changeWriter.writeValueAsString(change);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Keeps idle streams alive, and drops the feeds of owners that have had no subscriber for "retention"
+    private void heartbeat() {
+        long expiredBefore = System.nanoTime() - properties.retention().toNanos();
+        feeds.forEach((owner, feed) -> {
+            synchronized (feed) {
+                if (feed.subscribers.isEmpty() && feed.idleSince - expiredBefore < 0) {
+                    feed.removed = true;
+                    feeds.remove(owner, feed);
+                } else {
+                    feed.subscribers.forEach(Subscriber::heartbeat);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        heartbeats.shutdownNow();
+        feeds.values().forEach(feed -> {
+            synchronized (feed) {
+                new ArrayList<>(feed.subscribers).forEach(subscriber -> subscriber.emitter.complete());
+            }
+        });
+        senders.shutdown();
+    }
+
+    // An event as it goes on the wire - the JSON is written once, however many subscribers get it
+    private record Event(String id, String name, String data) {
+        static final Event HEARTBEAT = new Event(null, null, null);
+    }
+
+    // All fields are guarded by the feed's monitor
+    private final class OwnerFeed {
+        private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        private final Event[] ring = new Event[properties.bufferSize()];
+        private long lastNumber;
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private long idleSince = System.nanoTime();
+        private boolean removed;
+
+        void publish(String name, String data) {
+            lastNumber++;
+            Event event = new Event(epoch + ":" + lastNumber, name, data);
+            ring[(int) (lastNumber % ring.length)] = event;
+            // Iterating backwards, so a subscriber that has to go can be removed on the way
+            for (int i = subscribers.size() - 1; i >= 0; i--) {
+                subscribers.get(i).offer(event);
+            }
+        }
+
+        SseEmitter subscribe(String lastEventId) {
+            SseEmitter emitter = new SseEmitter(properties.timeout().toMillis());
+            Subscriber subscriber = new Subscriber(this, emitter);
+            emitter.onCompletion(subscriber::close);
+            emitter.onTimeout(subscriber::close);
+            emitter.onError(error -> subscriber.close());
+
+            // Replayed events are queued before the subscriber is added, so nothing new can overtake them.
+            // They are bounded by the ring, not by the subscriber queue, and are not counted against it.
+            long from = resumeAfter(lastEventId);
+            if (from < 0) {
+                subscriber.replay(new Event(epoch + ":" + lastNumber, CashCardChange.RESET.type(), toJson(CashCardChange.RESET)));
+            } else if (lastEventId == null) {
+                subscriber.replay(new Event(epoch + ":" + lastNumber, CashCardChange.READY.type(), toJson(CashCardChange.READY)));
+            } else {
+                for (long number = from + 1; number <= lastNumber; number++) {
+                    subscriber.replay(ring[(int) (number % ring.length)]);
+                }
+            }
+            subscribers.add(subscriber);
+            subscriberCount.incrementAndGet();
+            return emitter;
+        }
+
+        // The last event number the client has seen, or -1 when its events cannot be replayed
+        private long resumeAfter(String lastEventId) {
+            if (lastEventId == null) {
+                return lastNumber;
+            }
+            int separator = lastEventId.indexOf(':');
+            if (separator < 0 || !lastEventId.substring(0, separator).equals(epoch)) {
+                return -1;
+            }
+            try {
+                long seen = Long.parseLong(lastEventId.substring(separator + 1));
+                // Anything older than the ring has been overwritten
+                return seen <= lastNumber && seen >= lastNumber - ring.length ? seen : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        void remove(Subscriber subscriber) {
+            if (subscribers.remove(subscriber)) {
+                subscriberCount.decrementAndGet();
+                if (subscribers.isEmpty()) {
+                    idleSince = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    private final class Subscriber implements Runnable {
+        private final OwnerFeed feed;
+        private final SseEmitter emitter;
+        // Guarded by this subscriber's monitor
+        private final ArrayDeque<Event> queue = new ArrayDeque<>();
+        // How many of the queued events were replayed - always the ones at the head of the queue
+        private int replayed;
+        private boolean sending;
+        private boolean closed;
+
+        Subscriber(OwnerFeed feed, SseEmitter emitter) {
+            this.feed = feed;
+            this.emitter = emitter;
+        }
+
+        synchronized void replay(Event event) {
+            enqueue(event);
+            replayed++;
+        }
+
+        // Called with the feed's monitor held
+        void offer(Event event) {
+            boolean overflow;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                overflow = queue.size() - replayed >= properties.subscriberQueue();
+                if (overflow) {
+                    closed = true;
+                    queue.clear();
+                    replayed = 0;
+                } else {
+                    enqueue(event);
+                }
+            }
+            if (overflow) {
+                slowSubscribers.increment();
+                feed.remove(this);
+                // Completing waits for a send in progress, which is exactly what a slow client holds up - not here
+                senders.execute(emitter::complete);
+            }
+        }
+
+        // Called with the feed's monitor held. Only when idle - a busy stream needs no keep-alive.
+        synchronized void heartbeat() {
+            if (!closed && queue.isEmpty()) {
+                enqueue(Event.HEARTBEAT);
+            }
+        }
+
+        private void enqueue(Event event) {
+            queue.add(event);
+            if (!sending) {
+                sending = true;
+                senders.execute(this);
+            }
+        }
+
+        // Drains the queue on a virtual thread, then lets that thread end
+        @Override
+        public void run() {
+            while (true) {
+                Event event;
+                synchronized (this) {
+                    event = queue.poll();
+                    if (event == null || closed) {
+                        sending = false;
+                        return;
+                    }
+                    if (replayed > 0) {
+                        replayed--;
+                    }
+                }
+                try {
+                    if (event == Event.HEARTBEAT) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        emitter.send(SseEmitter.event().id(event.id()).name(event.name()).data(event.data()));
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // The client went away, or the stream already ended
+                    close();
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+                queue.clear();
+                replayed = 0;
+            }
+            synchronized (feed) {
+                feed.remove(this);
+            }
+        }
+    }
+}
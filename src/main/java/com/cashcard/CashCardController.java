@@ -1,16 +1,34 @@
 package com.cashcard;
 
-import org.springframework.data.domain.Page;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 // Tell Spring that this class is a "Component" of type "RestController" and capable of handling HTTP requests
 @RestController
@@ -18,10 +36,28 @@ import java.util.List;
 @RequestMapping("/cashcards")
 // Controller gets injected into Spring Web, which routes API requests to the correct method
 public class CashCardController {
+    // Same upper bound Spring Data applies to the "size" of a "Pageable"
+    private static final int MAX_SLICE_SIZE = 2000;
+    // Cards written between two flushes of the export stream
+    private static final int EXPORT_FLUSH_INTERVAL = 256;
+
     private final CashCardRepository cashCardRepository;
+    private final CashCardChangeFeed changeFeed;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader cashCardReader;
+    private final ObjectWriter cashCardWriter;
+    private final ObjectWriter batchResultWriter;
+    private final int batchChunkSize;
 
-    private CashCardController(CashCardRepository cashCardRepository) {
+    private CashCardController(CashCardRepository cashCardRepository, CashCardChangeFeed changeFeed, ObjectMapper objectMapper,
+                               @Value("${cashcard.batch.chunk-size:500}") int batchChunkSize) {
         this.cashCardRepository = cashCardRepository;
+        this.changeFeed = changeFeed;
+        this.objectMapper = objectMapper;
+        this.cashCardReader = objectMapper.readerFor(CashCard.class);
+        this.cashCardWriter = objectMapper.writerFor(CashCard.class);
+        this.batchResultWriter = objectMapper.writerFor(CashCardBatchResult.class);
+        this.batchChunkSize = batchChunkSize;
     }
 
     private CashCard findCashCard(Long requestedId, Principal principal) {
@@ -41,7 +77,9 @@ public class CashCardController {
         // If true, repository has found the 'CashCard' and it can be retrieved
         // else, it has not been found
         if (cashCard != null) {
-            return ResponseEntity.ok(cashCard);
+            // The "ETag" is the card's version. Spring answers a matching "If-None-Match" with "304 NOT MODIFIED"
+            // and no body, so polling clients only download the card again once it has changed.
+            return ResponseEntity.ok().eTag(CashCardETag.of(cashCard.version())).body(cashCard);
         } else {
             return ResponseEntity.notFound().build();
         }
@@ -57,6 +95,8 @@ public class CashCardController {
         // Spring Data's CrudRepository provides methods for creating, reading, updating, and deleted data from a data store
         // Saves a new "CashCard" and returns the saved object with a unique "id" provided by the database
         CashCard savedCashCard = cashCardRepository.save(cashCardWithOwner);
+        changeFeed.publish(principal.getName(),
+                CashCardChange.created(savedCashCard.id(), savedCashCard.amount(), savedCashCard.version()));
 
         // Constructs a URI to the newly-created "CashCard"
         // Caller can use this URI to GET the newly-created "CashCard"
@@ -66,12 +106,12 @@ public class CashCardController {
                 .toUri();
 
         // Return "201 CREATED" with the correct Location header
-        return ResponseEntity.created(locationOfNewCashCard).build();
+        return ResponseEntity.created(locationOfNewCashCard).eTag(CashCardETag.of(savedCashCard.version())).build();
     }
 
     @GetMapping
     private ResponseEntity<List<CashCard>> findAll(Pageable pageable, Principal principal) {
-        Page<CashCard> page = cashCardRepository.findByOwner(principal.getName(),
+        List<CashCard> page = cashCardRepository.findByOwner(principal.getName(),
                 // Java Bean implementation of "Pageable"
                 PageRequest.of(
                         pageable.getPageNumber(),
@@ -81,20 +121,287 @@ public class CashCardController {
                         pageable.getSortOr(Sort.by(Sort.Direction.ASC, "amount"))
                 ));
 
-        return ResponseEntity.ok(page.getContent());
+        return ResponseEntity.ok(page);
+    }
+
+    // Card count, total, and smallest and largest amount of the owner's cards, without sending the cards themselves.
+    // The aggregates are kept up to date on every write (see "CashCardSummaryTrigger"), so this is a single-row read
+    // however many cards the owner has.
+    @GetMapping("/summary")
+    private ResponseEntity<CashCardSummary> findSummary(Principal principal) {
+        return ResponseEntity.ok(cashCardRepository.findSummaryByOwner(principal.getName()));
+    }
+
+    // Streams every card of the owner as NDJSON (one JSON object per line), straight from a database cursor.
+    // Nothing is collected into a list first, so memory use stays flat however many cards the owner has,
+    // and the response starts as soon as the first rows arrive instead of after the whole query.
+    // The body is written on Spring MVC's async task executor, not on the request thread.
+    @GetMapping(path = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    private ResponseEntity<StreamingResponseBody> exportCashCards(Principal principal) {
+        String owner = principal.getName();
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+                int[] written = {0};
+                cashCardRepository.forEachByOwner(owner, cashCard -> {
+                    try {
+                        cashCardWriter.writeValue(generator, cashCard);
+                        generator.writeRaw('\n');
+                        // Get the first row out right away, then let the buffers fill up between flushes
+                        if (++written[0] % EXPORT_FLUSH_INTERVAL == 1) {
+                            generator.flush();
+                        }
+                    } catch (IOException e) {
+                        // Client went away - abandons the query as well
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    // Server-sent events with the owner's card changes as they happen, instead of polling GET /cashcards for them.
+    // Every event carries an id - a client that reconnects with it in "Last-Event-ID" (browsers' "EventSource" does so
+    // by itself) first gets the events it missed. See "CashCardChangeFeed" and "CashCardChange" for the details.
+    // "429 TOO MANY REQUESTS" when the owner already has "cashcard.changes.max-subscribers-per-owner" streams open.
+    @GetMapping(path = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    private ResponseEntity<SseEmitter> streamChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                                     Principal principal) {
+        SseEmitter emitter = changeFeed.subscribe(principal.getName(), lastEventId);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+        // Tells proxies not to cache or buffer the stream
+        return ResponseEntity.ok().header(HttpHeaders.CACHE_CONTROL, "no-store").header("X-Accel-Buffering", "no").body(emitter);
+    }
+
+    // Keyset (cursor) pagination - only routed here when the request carries an "after" parameter,
+    // so clients using "page", "size" and "sort" keep getting the plain list from "findAll"
+    // An empty "after" starts at the first slice, after that clients pass back the "next" token of the previous slice
+    // Slices are always ordered by "amount" ascending (ties broken by "id"), matching the default sort of "findAll"
+    @GetMapping(params = "after")
+    private ResponseEntity<CashCardSlice> findAllAfter(@RequestParam String after,
+                                                       @RequestParam(defaultValue = "20") int size,
+                                                       Principal principal) {
+        if (size < 1 || size > MAX_SLICE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Ask for one extra row to find out whether there is a next slice, instead of running a count query
+        List<CashCard> rows;
+        if (after.isEmpty()) {
+            rows = cashCardRepository.findFirstSliceByOwner(principal.getName(), size + 1);
+        } else {
+            CashCardCursor cursor;
+            try {
+                cursor = CashCardCursor.decode(after);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            rows = cashCardRepository.findSliceByOwnerAfter(principal.getName(), cursor.amount(), cursor.id(), size + 1);
+        }
+
+        if (rows.size() <= size) {
+            return ResponseEntity.ok(new CashCardSlice(rows, null));
+        }
+        List<CashCard> content = rows.subList(0, size);
+        return ResponseEntity.ok(new CashCardSlice(content, CashCardCursor.of(content.get(size - 1)).encode()));
     }
 
     // Supports the "PUT" verb and supplies the target "requestId".
     @PutMapping("/{requestedId}")
     // @RequestBody - contains the updated "CashCard" data
-    private ResponseEntity<Void> putCashCard(@PathVariable Long requestedId, @RequestBody CashCard cashCardUpdate, Principal principal) {
-        CashCard cashCard = findCashCard(requestedId, principal);
-        if (cashCard != null) {
-            // Build a "CashCard" with the updated values and save it.
-            CashCard updatedCashCard = new CashCard(cashCard.id(), cashCardUpdate.amount(), principal.getName());
-            cashCardRepository.save(updatedCashCard);
-            return ResponseEntity.noContent().build();
+    // "If-Match" (optional) - the "ETag" the client last read. The update only happens if the card is still at that version,
+    // otherwise "412 PRECONDITION FAILED" tells the client that someone else changed it in the meantime.
+    private ResponseEntity<Void> putCashCard(@PathVariable Long requestedId, @RequestBody CashCard cashCardUpdate,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                             Principal principal) {
+        // A single UPDATE ... WHERE id = ? AND owner = ? - the number of updated rows tells whether the card exists for this owner
+        if (ifMatch == null || ifMatch.equals("*")) {
+            if (cashCardRepository.updateAmount(requestedId, principal.getName(), cashCardUpdate.amount())) {
+                changeFeed.publish(principal.getName(), CashCardChange.updated(requestedId, cashCardUpdate.amount(), null));
+                return ResponseEntity.noContent().build();
+            }
+            return ResponseEntity.notFound().build();
+        }
+
+        Long expectedVersion = CashCardETag.versionOf(ifMatch);
+        if (expectedVersion != null
+                && cashCardRepository.updateAmountIfVersion(requestedId, principal.getName(), cashCardUpdate.amount(), expectedVersion)) {
+            changeFeed.publish(principal.getName(), CashCardChange.updated(requestedId, cashCardUpdate.amount(), expectedVersion + 1));
+            return ResponseEntity.noContent().eTag(CashCardETag.of(expectedVersion + 1)).build();
+        }
+        // Only a failed conditional update needs a second query, to tell "not found" apart from "changed by someone else"
+        if (cashCardRepository.existsByIdAndOwner(requestedId, principal.getName())) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
         }
         return ResponseEntity.notFound().build();
     }
+
+    private void publishCurrent(String owner, Long id) {
+        CashCard cashCard = cashCardRepository.findByIdAndOwner(id, owner);
+        if (cashCard != null) {
+            changeFeed.publish(owner, CashCardChange.updated(cashCard.id(), cashCard.amount(), cashCard.version()));
+        }
+    }
+
+    // Moves money between two of the owner's cards atomically - both cards change in one transaction, or neither does.
+    // 204 when done, 404 when either card does not exist or belongs to someone else,
+    // 409 when the source card holds less than "amount", 400 for a transfer to the same card or of a non-positive amount.
+    @PostMapping("/transfers")
+    private ResponseEntity<Void> transfer(@RequestBody CashCardTransfer transfer, Principal principal) {
+        if (transfer.from() == null || transfer.to() == null || transfer.from().equals(transfer.to()) || transfer.amount() <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        String owner = principal.getName();
+        return switch (cashCardRepository.transfer(owner, transfer.from(), transfer.to(), transfer.amount())) {
+            case COMPLETED -> {
+                // A transfer does not return the new balances - only read them back when somebody is listening
+                if (changeFeed.isWatched(owner)) {
+                    publishCurrent(owner, transfer.from());
+                    publishCurrent(owner, transfer.to());
+                }
+                yield ResponseEntity.noContent().build();
+            }
+            case NOT_FOUND -> ResponseEntity.notFound().build();
+            case INSUFFICIENT_FUNDS -> ResponseEntity.status(HttpStatus.CONFLICT).build();
+        };
+    }
+
+    // Bulk create - the body is a JSON array of "CashCard"s, or NDJSON (one "CashCard" per line).
+    // The body is read as a stream and written in chunks of "cashcard.batch.chunk-size" cards,
+    // each chunk as one JDBC batch in its own transaction. The response is a JSON array with one "CashCardBatchResult"
+    // per item, in request order: 201 with the new "id", or 400 if the item has no valid "amount".
+    // Results are streamed out chunk by chunk as well, so memory use does not grow with the size of the request.
+    @PostMapping(path = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    private ResponseEntity<StreamingResponseBody> createCashCards(InputStream body, Principal principal) {
+        String owner = principal.getName();
+        return batchResponse(body, (chunk, results) -> {
+            long[] amounts = new long[chunk.size()];
+            for (int i = 0; i < amounts.length; i++) {
+                amounts[i] = chunk.get(i).cashCard().amount();
+            }
+            List<Long> ids = cashCardRepository.insertAll(owner, amounts);
+            for (int i = 0; i < ids.size(); i++) {
+                results.add(new CashCardBatchResult(chunk.get(i).index(), ids.get(i), HttpStatus.CREATED.value()));
+                changeFeed.publish(owner, CashCardChange.created(ids.get(i), amounts[i], null));
+            }
+        });
+    }
+
+    // Bulk update - same body formats, chunking and response as the bulk create, but every item needs an "id".
+    // Per item: 204 when updated, 404 when the card does not exist or belongs to someone else, 400 when "id" or "amount" is missing.
+    @PutMapping(path = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    private ResponseEntity<StreamingResponseBody> putCashCards(InputStream body, Principal principal) {
+        String owner = principal.getName();
+        return batchResponse(body, (chunk, results) -> {
+            List<Integer> indexes = new ArrayList<>(chunk.size());
+            List<CashCard> updates = new ArrayList<>(chunk.size());
+            for (IndexedCashCard item : chunk) {
+                CashCard cashCard = item.cashCard();
+                if (cashCard.id() == null) {
+                    results.add(new CashCardBatchResult(item.index(), cashCard.id(), HttpStatus.BAD_REQUEST.value()));
+                } else {
+                    indexes.add(item.index());
+                    updates.add(cashCard);
+                }
+            }
+            if (updates.isEmpty()) {
+                return;
+            }
+            int[] updated = cashCardRepository.updateAmounts(owner, updates);
+            for (int i = 0; i < updated.length; i++) {
+                HttpStatus status = updated[i] > 0 ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND;
+                results.add(new CashCardBatchResult(indexes.get(i), updates.get(i).id(), status.value()));
+                if (updated[i] > 0) {
+                    changeFeed.publish(owner, CashCardChange.updated(updates.get(i).id(), updates.get(i).amount(), null));
+                }
+            }
+        });
+    }
+
+    private record IndexedCashCard(int index, CashCard cashCard) {
+    }
+
+    // Writes one chunk and adds a result for each of its items to "results"
+    private interface ChunkWriter {
+        void write(List<IndexedCashCard> chunk, List<CashCardBatchResult> results);
+    }
+
+    // The status is 200 before the first item has been read, so a chunk that cannot be written (e.g. the database is
+    // down) is reported in the results instead: its items get 500, nothing after it is read and gets a result.
+    // Like the export, the body is written on Spring MVC's async task executor.
+    private ResponseEntity<StreamingResponseBody> batchResponse(InputStream body, ChunkWriter writer) {
+        StreamingResponseBody results = out -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+                generator.writeStartArray();
+                readInChunks(body, generator, writer);
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(results);
+    }
+
+    // Jackson reads a root-level JSON array and a stream of whitespace separated JSON values (NDJSON) the same way.
+    // An item that is well-formed JSON but not a valid "CashCard" (e.g. no "amount") is reported as 400 on its own and
+    // the iterator skips to the next item. Chunks that were already written stay written if the body itself is malformed -
+    // that item is reported as 400 and nothing after it is read.
+    // Only the results of the current chunk are held, sorted back into request order before they go out.
+    private void readInChunks(InputStream body, JsonGenerator generator, ChunkWriter writer) throws IOException {
+        List<IndexedCashCard> chunk = new ArrayList<>(batchChunkSize);
+        List<CashCardBatchResult> results = new ArrayList<>(batchChunkSize);
+        int index = 0;
+        try (MappingIterator<CashCard> cashCards = cashCardReader.readValues(body)) {
+            while (cashCards.hasNextValue()) {
+                try {
+                    chunk.add(new IndexedCashCard(index, cashCards.nextValue()));
+                } catch (JsonMappingException e) {
+                    results.add(new CashCardBatchResult(index, null, HttpStatus.BAD_REQUEST.value()));
+                }
+                index++;
+                // Rejected items count towards the chunk too, or a body of nothing but bad items would pile up results
+                if (chunk.size() + results.size() >= batchChunkSize) {
+                    if (!writeChunk(chunk, results, generator, writer)) {
+                        return;
+                    }
+                }
+            }
+        } catch (JsonProcessingException e) {
+            results.add(new CashCardBatchResult(index, null, HttpStatus.BAD_REQUEST.value()));
+        }
+        writeChunk(chunk, results, generator, writer);
+    }
+
+    // Returns false when the chunk could not be written
+    private boolean writeChunk(List<IndexedCashCard> chunk, List<CashCardBatchResult> results,
+                               JsonGenerator generator, ChunkWriter writer) throws IOException {
+        boolean written = true;
+        if (!chunk.isEmpty()) {
+            try {
+                writer.write(chunk, results);
+            } catch (RuntimeException e) {
+                // One transaction per chunk - none of its items were written. Those already rejected keep their 400.
+                written = false;
+                // A set, not a list - checking every item against a list of rejections is quadratic in the chunk size
+                Set<Integer> rejected = new HashSet<>(results.size() * 2);
+                for (CashCardBatchResult result : results) {
+                    rejected.add(result.index());
+                }
+                for (IndexedCashCard item : chunk) {
+                    if (!rejected.contains(item.index())) {
+                        results.add(new CashCardBatchResult(item.index(), item.cashCard().id(), HttpStatus.INTERNAL_SERVER_ERROR.value()));
+                    }
+                }
+            }
+        }
+        results.sort((a, b) -> Integer.compare(a.index(), b.index()));
+        for (CashCardBatchResult result : results) {
+            batchResultWriter.writeValue(generator, result);
+        }
+        // Lets the client see each chunk's results as soon as they are known
+        generator.flush();
+        chunk.clear();
+        results.clear();
+        return written;
+    }
 }
@@ -0,0 +1,31 @@
+package com.cashcard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Position of the last "CashCard" returned in a keyset slice, in the (amount, id) order of the slice.
+// Clients only ever see it as an opaque URL-safe token, so the encoding can change without breaking them.
+// Shared with the reactive variant of the API, so a cursor from one works with the other.
+public record CashCardCursor(long amount, Long id) {
+
+    public static CashCardCursor of(CashCard cashCard) {
+        return new CashCardCursor(cashCard.amount(), cashCard.id());
+    }
+
+    public String encode() {
+        String position = amount + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Throws "IllegalArgumentException" for anything that was not produced by "encode()"
+    public static CashCardCursor decode(String token) {
+        String position = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        int separator = position.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Malformed cursor: " + token);
+        }
+        return new CashCardCursor(
+                Long.parseLong(position.substring(0, separator)),
+                Long.valueOf(position.substring(separator + 1)));
+    }
+}
@@ -0,0 +1,26 @@
+package com.cashcard;
+
+// A card's "ETag" is its version, quoted.
+// Shared with the reactive variant of the API, so both answer the same tags and read "If-Match" the same way.
+public final class CashCardETag {
+
+    private CashCardETag() {
+    }
+
+    public static String of(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    // "If-Match" uses strong comparison, so only a quoted version number can match - weak or malformed tags never do.
+    // Returns null for those.
+    public static Long versionOf(String eTag) {
+        if (eTag.length() < 3 || eTag.charAt(0) != '"' || eTag.charAt(eTag.length() - 1) != '"') {
+            return null;
+        }
+        try {
+            return Long.valueOf(eTag.substring(1, eTag.length() - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.cashcard;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+// Binary alternatives to JSON, picked by content negotiation:
+// - "Accept: application/cbor" or "application/x-jackson-smile" gets the response in that encoding
+// - "Content-Type" with either one is accepted for request bodies (POST and PUT of a card)
+// JSON stays the default for clients that ask for nothing in particular.
+//
+// Both encode the same "CashCard" fields as the JSON - names included - but numbers and lengths are binary,
+// so there is nothing to format or parse as text. Amounts are written as exact decimals (see "MinorUnitsJson").
+// Message converter Beans are picked up by Spring Boot and put in place of Spring MVC's defaults for these types;
+// they are built from Spring Boot's "Jackson2ObjectMapperBuilder", so "spring.jackson.*" settings apply to them too.
+@Configuration
+class CashCardEncodingConfig {
+
+    @Bean
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+}
@@ -0,0 +1,12 @@
+package com.cashcard;
+
+import java.util.function.Consumer;
+
+// Custom fragment of "CashCardRepository" for reading every card of an owner without holding them all in memory
+public interface CashCardExportOperations {
+
+    // Hands each of the owner's cards to "consumer" as it is read from the database, in (amount, id) order.
+    // Rows come from a forward-only cursor, "cashcard.export.fetch-size" at a time.
+    // Throws "QueryTimeoutException" once the export has taken longer than "cashcard.export.max-duration".
+    void forEachByOwner(String owner, Consumer<CashCard> consumer);
+}
@@ -0,0 +1,84 @@
+package com.cashcard;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+class CashCardExportOperationsImpl implements CashCardExportOperations {
+    // Same order as the (owner, amount, id) index, so the database reads the index forward instead of sorting first.
+    // "owner" is fixed by the WHERE clause, but H2 only sees that the index is in order when it is named here too.
+    private static final String SELECT_BY_OWNER =
+            "SELECT id, amount, owner, version FROM cash_card WHERE owner = ? ORDER BY owner, amount, id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int fetchSize;
+    private final Duration maxDuration;
+
+    CashCardExportOperationsImpl(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                 @Value("${cashcard.export.fetch-size:500}") int fetchSize,
+                                 @Value("${cashcard.export.max-duration:2m}") Duration maxDuration) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Some drivers (PostgreSQL for one) only honour the fetch size inside a transaction and load everything otherwise.
+        // Repeatable read keeps the rows still to be fetched as they were when the query started - under read committed,
+        // H2's lazy cursor fails with "row not found" once a concurrent transaction deletes one of them.
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.readOnlyTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.fetchSize = fetchSize;
+        this.maxDuration = maxDuration;
+    }
+
+    @Override
+    public void forEachByOwner(String owner, Consumer<CashCard> consumer) {
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            // H2 otherwise builds the whole result (spilling it to a temporary file past MAX_MEMORY_ROWS) before handing
+            // out the first row, and ignores the fetch size. Lazily, each row is read from the index as it is fetched.
+            // The setting belongs to the session, so it is put back before the connection returns to the pool.
+            boolean h2 = connection.getMetaData().getDatabaseProductName().equals("H2");
+            if (h2) {
+                setLazyQueryExecution(connection, true);
+            }
+            try (PreparedStatement ps = connection.prepareStatement(
+                    SELECT_BY_OWNER, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(fetchSize);
+                ps.setString(1, owner);
+                // The cursor holds a pooled connection (and its snapshot) for as long as the consumer - in the end the
+                // client reading the export - takes. A client slow enough to keep it past "maxDuration" is given up on,
+                // so a handful of them cannot starve every other request of connections.
+                long deadline = System.nanoTime() + maxDuration.toNanos();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        if (System.nanoTime() - deadline > 0) {
+                            throw new QueryTimeoutException("Export of " + owner + "'s cards took longer than " + maxDuration);
+                        }
+                        consumer.accept(new CashCard(rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getLong(4)));
+                    }
+                }
+            } finally {
+                if (h2) {
+                    setLazyQueryExecution(connection, false);
+                }
+            }
+            return null;
+        }));
+    }
+
+    private static void setLazyQueryExecution(Connection connection, boolean lazy) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET LAZY_QUERY_EXECUTION " + lazy);
+        }
+    }
+}
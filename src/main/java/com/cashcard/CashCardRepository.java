@@ -1,13 +1,95 @@
 package com.cashcard;
 
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
+import java.util.List;
+
 // CrudRepository - interface supplied by Spring Data
 // When extended, Spring Boot and Spring Data work together to automatically generate CRUD methods to interact with a database
-public interface CashCardRepository extends CrudRepository<CashCard, Long>, PagingAndSortingRepository<CashCard, Long> {
+// "CashCardBatchOperations", "CashCardExportOperations", "CashCardSummaryOperations" and "CashCardTransferOperations"
+// are custom fragments with hand-written JDBC (see their "Impl" classes) for bulk writes, streaming reads,
+// per-owner aggregates and transfers between cards
+public interface CashCardRepository extends CrudRepository<CashCard, Long>, PagingAndSortingRepository<CashCard, Long>,
+        CashCardBatchOperations, CashCardExportOperations, CashCardSummaryOperations, CashCardTransferOperations {
+    // Read-through cache keyed by (id, owner) - only the first read of a card goes to the database.
+    // "sync" makes concurrent misses for the same key wait for a single load, and makes a concurrent "save" of that
+    // key wait for the load to finish, so a load that read the old row can never overwrite the newer cached value.
+    @Cacheable(cacheNames = CashCardCacheConfig.CASH_CARDS, sync = true)
     CashCard findByIdAndOwner(Long id, String owner);
-    Page<CashCard> findByOwner(String owner, PageRequest pageRequest);
+
+    // Every create and update goes through "save", which refreshes the cached card with what was just written
+    @Override
+    @CachePut(cacheNames = CashCardCacheConfig.CASH_CARDS,
+            key = "new org.springframework.cache.interceptor.SimpleKey(#result.id(), #result.owner())")
+    <S extends CashCard> S save(S cashCard);
+
+    // The other writes Spring Data offers are covered too, so no write can leave a stale card behind.
+    // One card per key would need a loop the annotations cannot express - these drop the whole cache.
+    @Override
+    @CacheEvict(cacheNames = CashCardCacheConfig.CASH_CARDS, allEntries = true)
+    <S extends CashCard> Iterable<S> saveAll(Iterable<S> cashCards);
+
+    @Override
+    @CacheEvict(cacheNames = CashCardCacheConfig.CASH_CARDS,
+            key = "new org.springframework.cache.interceptor.SimpleKey(#p0.id(), #p0.owner())")
+    void delete(CashCard cashCard);
+
+    @Override
+    @CacheEvict(cacheNames = CashCardCacheConfig.CASH_CARDS, allEntries = true)
+    void deleteAll(Iterable<? extends CashCard> cashCards);
+
+    @Override
+    @CacheEvict(cacheNames = CashCardCacheConfig.CASH_CARDS, allEntries = true)
+    void deleteAllById(Iterable<? extends Long> ids);
+
+    // Deleting by "id" alone does not tell us the owner half of the key, so drop the whole cache instead
+    @Override
+    @CacheEvict(cacheNames = CashCardCacheConfig.CASH_CARDS, allEntries = true)
+    void deleteById(Long id);
+
+    @Override
+    @CacheEvict(cacheNames = CashCardCacheConfig.CASH_CARDS, allEntries = true)
+    void deleteAll();
+
+    // Single-statement updates - no read before the write, the affected row count tells the caller what happened.
+    // The cached card is evicted after the update, and a concurrent cache load of the same key finishes before the eviction.
+    @Modifying
+    @Query("UPDATE cash_card SET amount = :amount, version = version + 1 WHERE id = :id AND owner = :owner")
+    @CacheEvict(cacheNames = CashCardCacheConfig.CASH_CARDS,
+            key = "new org.springframework.cache.interceptor.SimpleKey(#p0, #p1)")
+    boolean updateAmount(Long id, String owner, long amount);
+
+    // Optimistic concurrency - only updates the card if nobody else has changed it since the client read "version"
+    @Modifying
+    @Query("""
+            UPDATE cash_card SET amount = :amount, version = version + 1
+            WHERE id = :id AND owner = :owner AND version = :version""")
+    @CacheEvict(cacheNames = CashCardCacheConfig.CASH_CARDS,
+            key = "new org.springframework.cache.interceptor.SimpleKey(#p0, #p1)")
+    boolean updateAmountIfVersion(Long id, String owner, long amount, long version);
+
+    boolean existsByIdAndOwner(Long id, String owner);
+
+    // Returning a "List" instead of a "Page" still applies the requested page, size and sort,
+    // but skips the extra "SELECT COUNT(*)" query that a "Page" needs for its total element count
+    List<CashCard> findByOwner(String owner, Pageable pageable);
+
+    // Keyset (cursor) pagination - both queries walk the (owner, amount, id) index in order and stop after "limit" rows,
+    // so a deep slice costs the same as the first one (no OFFSET rows to skip over)
+    @Query("SELECT * FROM cash_card WHERE owner = :owner ORDER BY amount, id LIMIT :limit")
+    List<CashCard> findFirstSliceByOwner(String owner, int limit);
+
+    // "amount >= :amount" gives the database an index range to seek into, the OR then drops the rows at or before the cursor
+    @Query("""
+            SELECT * FROM cash_card
+            WHERE owner = :owner AND amount >= :amount AND (amount > :amount OR id > :id)
+            ORDER BY amount, id LIMIT :limit""")
+    List<CashCard> findSliceByOwnerAfter(String owner, long amount, Long id, int limit);
 }
@@ -0,0 +1,63 @@
+package com.cashcard;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Operator view of the shards, only there when "cashcard.sharding.enabled=true" (role "ADMIN", like "cashcardsummary"):
+// - GET  /actuator/cashcardshards          owners and cards per shard, and how many owners a rebalance would move
+// - POST /actuator/cashcardshards          rebalance - moves every owner to the shard the ring picks for it now
+// - POST /actuator/cashcardshards/{owner}  with {"shard": n} - moves one owner
+@Component
+@Endpoint(id = "cashcardshards")
+@ConditionalOnProperty(name = "cashcard.sharding.enabled", havingValue = "true")
+class CashCardShardEndpoint {
+    private final OwnerShardDirectory directory;
+    private final ShardRebalancer rebalancer;
+
+    CashCardShardEndpoint(OwnerShardDirectory directory, ShardRebalancer rebalancer) {
+        this.directory = directory;
+        this.rebalancer = rebalancer;
+    }
+
+    record Shard(int shard, long owners, long cards) {
+    }
+
+    record Report(List<Shard> shards, long misplacedOwners) {
+    }
+
+    record Moved(String owner, int shard, int cards) {
+    }
+
+    @ReadOperation
+    Report shards() {
+        Map<String, Integer> placements = directory.placements();
+        List<Shard> shards = new ArrayList<>();
+        for (int shard = 0; shard < directory.shardCount(); shard++) {
+            Long cards = directory.shard(shard).queryForObject("SELECT COUNT(*) FROM cash_card", Long.class);
+            shards.add(new Shard(shard, Collections.frequency(placements.values(), shard), cards));
+        }
+        long misplaced = placements.entrySet().stream()
+                .filter(placement -> directory.ringShardOf(placement.getKey()) != placement.getValue())
+                .count();
+        return new Report(shards, misplaced);
+    }
+
+    @WriteOperation
+    Map<String, Integer> rebalance() {
+        return rebalancer.rebalance();
+    }
+
+    @WriteOperation
+    Moved move(@Selector String owner, int shard) {
+        return new Moved(owner, shard, rebalancer.move(owner, shard));
+    }
+}
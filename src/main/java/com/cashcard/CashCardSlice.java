@@ -0,0 +1,8 @@
+package com.cashcard;
+
+import java.util.List;
+
+// One slice of an owner's "CashCard" list in keyset pagination mode.
+// Unlike a "Page", a slice carries no total count - "next" is the cursor for the following slice, or null on the last one.
+public record CashCardSlice(List<CashCard> content, String next) {
+}
@@ -0,0 +1,17 @@
+package com.cashcard;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+// An owner's cards at a glance - how many, their total, and the smallest and largest amount (null without cards).
+// Amounts are in cents like "CashCard.amount", and are written the same way in JSON.
+public record CashCardSummary(long count,
+                              @JsonSerialize(using = MinorUnitsJson.Serializer.class)
+                              @JsonDeserialize(using = MinorUnitsJson.Deserializer.class) long total,
+                              @JsonSerialize(using = MinorUnitsJson.Serializer.class)
+                              @JsonDeserialize(using = MinorUnitsJson.Deserializer.class) Long min,
+                              @JsonSerialize(using = MinorUnitsJson.Serializer.class)
+                              @JsonDeserialize(using = MinorUnitsJson.Deserializer.class) Long max) {
+
+    static final CashCardSummary EMPTY = new CashCardSummary(0, 0, null, null);
+}
@@ -0,0 +1,5 @@
+package com.cashcard;
+
+// An owner whose stored summary ("actual") differs from one recomputed from the cards themselves ("expected")
+public record CashCardSummaryDrift(String owner, CashCardSummary expected, CashCardSummary actual) {
+}
@@ -0,0 +1,29 @@
+package com.cashcard;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// "GET /actuator/cashcardsummary" - consistency check of the trigger-maintained "cash_card_summary" table.
+// Recomputes every owner's aggregates from the cards and lists the owners whose stored summary has drifted.
+// It scans the whole "cash_card" table, so it is for operators (role "ADMIN"), not for dashboards.
+@Component
+@Endpoint(id = "cashcardsummary")
+class CashCardSummaryEndpoint {
+    private final CashCardRepository cashCardRepository;
+
+    CashCardSummaryEndpoint(CashCardRepository cashCardRepository) {
+        this.cashCardRepository = cashCardRepository;
+    }
+
+    record Report(boolean consistent, List<CashCardSummaryDrift> drift) {
+    }
+
+    @ReadOperation
+    Report check() {
+        List<CashCardSummaryDrift> drift = cashCardRepository.findSummaryDrift();
+        return new Report(drift.isEmpty(), drift);
+    }
+}
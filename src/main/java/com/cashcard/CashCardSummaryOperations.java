@@ -0,0 +1,14 @@
+package com.cashcard;
+
+import java.util.List;
+
+// Custom fragment of "CashCardRepository" for the per-owner aggregates in "cash_card_summary".
+public interface CashCardSummaryOperations {
+
+    // O(1) - reads the owner's stored aggregates, "CashCardSummary.EMPTY" when the owner has no cards
+    CashCardSummary findSummaryByOwner(String owner);
+
+    // Recomputes every owner's aggregates from "cash_card" (a full scan - for consistency checks, not for requests)
+    // and returns the owners whose stored summary differs, empty when everything agrees
+    List<CashCardSummaryDrift> findSummaryDrift();
+}
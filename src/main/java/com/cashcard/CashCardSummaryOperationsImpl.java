@@ -0,0 +1,73 @@
+package com.cashcard;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+class CashCardSummaryOperationsImpl implements CashCardSummaryOperations {
+    private static final String SELECT_BY_OWNER =
+            "SELECT owner, card_count, total, min_amount, max_amount FROM cash_card_summary WHERE owner = ?";
+    private static final String SELECT_ALL =
+            "SELECT owner, card_count, total, min_amount, max_amount FROM cash_card_summary";
+    private static final String RECOMPUTE_ALL =
+            "SELECT owner, COUNT(*), SUM(amount), MIN(amount), MAX(amount) FROM cash_card GROUP BY owner";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate snapshotTransaction;
+
+    CashCardSummaryOperationsImpl(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Both sides of the comparison have to come from the same snapshot, or concurrent writes show up as drift
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setReadOnly(true);
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    @Override
+    public CashCardSummary findSummaryByOwner(String owner) {
+        List<CashCardSummary> rows = jdbcTemplate.query(SELECT_BY_OWNER, SUMMARY, owner);
+        return rows.isEmpty() ? CashCardSummary.EMPTY : rows.get(0);
+    }
+
+    @Override
+    public List<CashCardSummaryDrift> findSummaryDrift() {
+        return snapshotTransaction.execute(status -> {
+            Map<String, CashCardSummary> stored = byOwner(SELECT_ALL);
+            Map<String, CashCardSummary> recomputed = byOwner(RECOMPUTE_ALL);
+
+            Set<String> owners = new HashSet<>(stored.keySet());
+            owners.addAll(recomputed.keySet());
+            List<CashCardSummaryDrift> drift = new ArrayList<>();
+            for (String owner : owners) {
+                CashCardSummary expected = recomputed.getOrDefault(owner, CashCardSummary.EMPTY);
+                CashCardSummary actual = stored.getOrDefault(owner, CashCardSummary.EMPTY);
+                if (!Objects.equals(expected, actual)) {
+                    drift.add(new CashCardSummaryDrift(owner, expected, actual));
+                }
+            }
+            return drift;
+        });
+    }
+
+    private Map<String, CashCardSummary> byOwner(String sql) {
+        Map<String, CashCardSummary> summaries = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            summaries.put(rs.getString(1), SUMMARY.mapRow(rs, 0));
+        });
+        return summaries;
+    }
+
+    // Both queries return (owner, count, total, min, max)
+    private static final RowMapper<CashCardSummary> SUMMARY = (rs, rowNum) -> new CashCardSummary(
+            rs.getLong(2), rs.getLong(3), rs.getObject(4, Long.class), rs.getObject(5, Long.class));
+}
@@ -0,0 +1,130 @@
+package com.cashcard;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// H2 row trigger that keeps "cash_card_summary" in step with "cash_card" (see schema.sql).
+// H2 calls it with the connection of the statement that changed the row, so the summary change commits or rolls back
+// together with the card change. H2 creates it by reflection, which is why it is public.
+//
+// Count and total are adjusted arithmetically. Min and max only widen on the way in - when the card that held the
+// minimum or maximum is removed or changed, both are read again from the (owner, amount, id) index.
+//
+// It also refuses changes to the cards of an owner in "cash_card_moved_owner" (see "ShardRebalancer"). The check comes
+// after the owner's summary row is written, so the change holds that row's lock while it looks: a move, which takes
+// the same lock after listing the owner, either waits for the change to commit or the change sees the listing.
+public class CashCardSummaryTrigger implements Trigger {
+    // Rows arrive as (ID, AMOUNT, OWNER, VERSION), the column order of "cash_card"
+    private static final int AMOUNT = 1;
+    private static final int OWNER = 2;
+
+    private static final String ADD = """
+            UPDATE cash_card_summary
+            SET card_count = card_count + 1, total = total + ?, min_amount = LEAST(min_amount, ?), max_amount = GREATEST(max_amount, ?)
+            WHERE owner = ?""";
+    private static final String ADD_FIRST = """
+            INSERT INTO cash_card_summary (owner, card_count, total, min_amount, max_amount) VALUES (?, 1, ?, ?, ?)""";
+    private static final String REMOVE = """
+            UPDATE cash_card_summary SET card_count = card_count - 1, total = total - ? WHERE owner = ?""";
+    private static final String REMOVE_LAST = "DELETE FROM cash_card_summary WHERE owner = ? AND card_count = 0";
+    private static final String CHANGE = """
+            UPDATE cash_card_summary
+            SET total = total + ?, min_amount = LEAST(min_amount, ?), max_amount = GREATEST(max_amount, ?)
+            WHERE owner = ?""";
+    // Only does anything when the amount that just left was the minimum or the maximum.
+    // A statement that deletes several rows fires this after all of them are gone - if none of the owner's cards are
+    // left, the bounds stay as they are until the last row's trigger drops the summary row.
+    private static final String RECOMPUTE_BOUNDS = """
+            UPDATE cash_card_summary
+            SET min_amount = COALESCE((SELECT amount FROM cash_card WHERE owner = ? ORDER BY amount LIMIT 1), min_amount),
+                max_amount = COALESCE((SELECT amount FROM cash_card WHERE owner = ? ORDER BY amount DESC LIMIT 1), max_amount)
+            WHERE owner = ? AND (min_amount = ? OR max_amount = ?)""";
+    private static final String TOUCH = "UPDATE cash_card_summary SET card_count = card_count WHERE owner = ?";
+    private static final String MOVED = "SELECT shard FROM cash_card_moved_owner WHERE owner = ?";
+    private static final String DUPLICATE_KEY = "23505";
+    // SQLSTATE of the refusal - class "XM" is free for applications to use
+    static final String OWNER_MOVED = "XM001";
+
+    @Override
+    public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+        if (oldRow == null) {
+            add(connection, owner(newRow), amount(newRow));
+        } else if (newRow == null) {
+            remove(connection, owner(oldRow), amount(oldRow));
+        } else if (!owner(oldRow).equals(owner(newRow))) {
+            remove(connection, owner(oldRow), amount(oldRow));
+            add(connection, owner(newRow), amount(newRow));
+        } else if (amount(oldRow) != amount(newRow)) {
+            change(connection, owner(newRow), amount(oldRow), amount(newRow));
+        } else {
+            // Only the version moved - nothing to add up, but the row lock is still needed for the check below
+            update(connection, TOUCH, owner(newRow));
+        }
+
+        if (oldRow != null) {
+            checkNotMoved(connection, owner(oldRow));
+        }
+        if (newRow != null && (oldRow == null || !owner(oldRow).equals(owner(newRow)))) {
+            checkNotMoved(connection, owner(newRow));
+        }
+    }
+
+    private static void checkNotMoved(Connection connection, String owner) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(MOVED)) {
+            ps.setString(1, owner);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    throw new SQLException("The cards of " + owner + " have moved to shard " + rs.getInt(1), OWNER_MOVED);
+                }
+            }
+        }
+    }
+
+    private static void add(Connection connection, String owner, long amount) throws SQLException {
+        if (update(connection, ADD, amount, amount, amount, owner) > 0) {
+            return;
+        }
+        try {
+            update(connection, ADD_FIRST, owner, amount, amount, amount);
+        } catch (SQLException e) {
+            // Another transaction created the owner's row first - add to that one
+            if (!DUPLICATE_KEY.equals(e.getSQLState())) {
+                throw e;
+            }
+            update(connection, ADD, amount, amount, amount, owner);
+        }
+    }
+
+    private static void remove(Connection connection, String owner, long amount) throws SQLException {
+        update(connection, REMOVE, amount, owner);
+        if (update(connection, REMOVE_LAST, owner) == 0) {
+            update(connection, RECOMPUTE_BOUNDS, owner, owner, owner, amount, amount);
+        }
+    }
+
+    private static void change(Connection connection, String owner, long oldAmount, long newAmount) throws SQLException {
+        update(connection, CHANGE, newAmount - oldAmount, newAmount, newAmount, owner);
+        update(connection, RECOMPUTE_BOUNDS, owner, owner, owner, oldAmount, oldAmount);
+    }
+
+    private static int update(Connection connection, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                ps.setObject(i + 1, parameters[i]);
+            }
+            return ps.executeUpdate();
+        }
+    }
+
+    private static long amount(Object[] row) {
+        return ((Number) row[AMOUNT]).longValue();
+    }
+
+    private static String owner(Object[] row) {
+        return (String) row[OWNER];
+    }
+}
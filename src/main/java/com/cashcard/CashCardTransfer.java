@@ -0,0 +1,15 @@
+package com.cashcard;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.annotation.Nulls;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+// Body of POST /cashcards/transfers - move "amount" (in cents, a decimal number in JSON) from card "from" to card "to"
+public record CashCardTransfer(Long from,
+                               Long to,
+                               @JsonProperty(required = true) @JsonSetter(nulls = Nulls.FAIL)
+                               @JsonSerialize(using = MinorUnitsJson.Serializer.class)
+                               @JsonDeserialize(using = MinorUnitsJson.Deserializer.class) long amount) {
+}
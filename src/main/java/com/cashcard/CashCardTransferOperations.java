@@ -0,0 +1,17 @@
+package com.cashcard;
+
+// Custom fragment of "CashCardRepository" for moving money between two cards of the same owner.
+public interface CashCardTransferOperations {
+
+    enum Outcome {
+        COMPLETED,
+        // Either card does not exist or belongs to someone else - nothing was changed
+        NOT_FOUND,
+        // "from" holds less than "amount" - nothing was changed
+        INSUFFICIENT_FUNDS
+    }
+
+    // Debits "amount" cents from card "fromId" and credits it to card "toId" in one transaction.
+    // Both cards must belong to "owner", "amount" must be positive and the cards must differ.
+    Outcome transfer(String owner, long fromId, long toId, long amount);
+}
@@ -0,0 +1,101 @@
+package com.cashcard;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Two levels of locking, both always taken in ascending order so that two transfers can never wait on each other in a cycle:
+//
+// 1. An in-process lock stripe per card, picked by hashing the id, taken in stripe order. Transfers touching the same
+//    (hot) card queue up here, before they take a database connection, instead of each holding a pooled connection
+//    while blocked on a row lock. Transfers between unrelated cards almost always land on different stripes and run in parallel.
+// 2. "SELECT ... FOR UPDATE" on both rows in id order, inside the transaction. This is what makes the transfer correct
+//    against every other writer - other application instances, PUT /cashcards/{id} and the batch updates - which never
+//    see the stripes.
+class CashCardTransferOperationsImpl implements CashCardTransferOperations {
+    private static final String LOCK_BOTH =
+            "SELECT id, amount FROM cash_card WHERE id IN (?, ?) AND owner = ? ORDER BY id FOR UPDATE";
+    private static final String MOVE = "UPDATE cash_card SET amount = amount + ?, version = version + 1 WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CacheManager cacheManager;
+    private final ReentrantLock[] stripes;
+
+    CashCardTransferOperationsImpl(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, CacheManager cacheManager,
+                                   @Value("${cashcard.transfers.lock-stripes:256}") int stripeCount) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.cacheManager = cacheManager;
+        // Rounded up to a power of two so a stripe is picked with a mask instead of a division
+        this.stripes = new ReentrantLock[stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public Outcome transfer(String owner, long fromId, long toId, long amount) {
+        if (fromId == toId || amount <= 0) {
+            throw new IllegalArgumentException("A transfer needs two different cards and a positive amount");
+        }
+        int first = Math.min(stripeOf(fromId), stripeOf(toId));
+        int second = Math.max(stripeOf(fromId), stripeOf(toId));
+        stripes[first].lock();
+        if (second != first) {
+            stripes[second].lock();
+        }
+        Outcome outcome;
+        try {
+            outcome = transactionTemplate.execute(status -> move(owner, fromId, toId, amount));
+        } finally {
+            if (second != first) {
+                stripes[second].unlock();
+            }
+            stripes[first].unlock();
+        }
+
+        // Evict only after the commit, so the next read loads the new amounts
+        if (outcome == Outcome.COMPLETED) {
+            Cache cache = cacheManager.getCache(CashCardCacheConfig.CASH_CARDS);
+            if (cache != null) {
+                cache.evict(new SimpleKey(fromId, owner));
+                cache.evict(new SimpleKey(toId, owner));
+            }
+        }
+        return outcome;
+    }
+
+    private Outcome move(String owner, long fromId, long toId, long amount) {
+        long[] fromBalance = new long[1];
+        int[] found = new int[1];
+        jdbcTemplate.query(LOCK_BOTH, (RowCallbackHandler) rs -> {
+            found[0]++;
+            if (rs.getLong(1) == fromId) {
+                fromBalance[0] = rs.getLong(2);
+            }
+        }, Math.min(fromId, toId), Math.max(fromId, toId), owner);
+
+        // Nothing has been written yet, returning simply commits the row locks away
+        if (found[0] < 2) {
+            return Outcome.NOT_FOUND;
+        }
+        if (fromBalance[0] < amount) {
+            return Outcome.INSUFFICIENT_FUNDS;
+        }
+        jdbcTemplate.batchUpdate(MOVE, List.of(new Object[]{-amount, fromId}, new Object[]{amount, toId}));
+        return Outcome.COMPLETED;
+    }
+
+    // Spreads sequential ids over the stripes (Fibonacci hashing)
+    private int stripeOf(long id) {
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (stripes.length - 1);
+    }
+}
@@ -0,0 +1,248 @@
+package com.cashcard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Append-only log of every change "InMemoryCashCardRepository" makes, replayed on startup to rebuild its state.
+//
+// Records are small fixed-layout binary entries:
+//   OWNER  (1) - int owner index, UTF owner name     - the first time an owner appears
+//   UPSERT (2) - long id, int owner, long amount, long version - a card was created or changed
+//   DELETE (3) - long id
+// A crash can leave a partly written record at the end; replay stops there and cuts it off.
+// Records are staged in memory until "publish", so a write either reaches the file with all of its records or,
+// after "discard", with none of them.
+//
+// Group commit: "publish" only hands the staged records over (cheap, done under the store's write lock); "sync" then
+// writes and flushes everything published so far, outside that lock. Writers that publish while a flush is running
+// wait for the next one, which takes all of their records to disk with a single write and fsync.
+// A flush that fails is fatal: every later "sync" that is not already durable rethrows the failure.
+// On startup the log is compacted - rewritten as one UPSERT per live card - so it does not grow without bound across restarts.
+final class CashCardWriteAheadLog implements Closeable {
+    private static final byte OWNER = 1;
+    private static final byte UPSERT = 2;
+    private static final byte DELETE = 3;
+
+    interface Replay {
+        void owner(int index, String name);
+
+        void upsert(long id, int owner, long amount, long version);
+
+        void delete(long id);
+    }
+
+    interface Snapshot {
+        void writeTo(CashCardWriteAheadLog log) throws IOException;
+    }
+
+    private final Path path;
+    private final boolean fsync;
+    // Guarded by "flushLock" - as is "flushing", the batch being written
+    private FileChannel channel;
+    private DataOutputStream out;
+    private ByteArrayOutputStream flushing = new ByteArrayOutputStream(1 << 12);
+    private IOException failure;
+    private final Object flushLock = new Object();
+    // Records of the write in progress - only the store's (single) writer touches it
+    private final ByteArrayOutputStream staged = new ByteArrayOutputStream(1 << 12);
+    // Where the append methods write to - "staged", except while "rewrite" writes a snapshot straight to the file
+    private DataOutputStream records = new DataOutputStream(staged);
+    // Published records not yet taken by a flush, and how many bytes were ever published. Guarded by "this".
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(1 << 12);
+    private long published;
+    // How many of the published bytes are on disk
+    private volatile long durable;
+
+    CashCardWriteAheadLog(Path path, boolean fsync) {
+        this.path = path.toAbsolutePath();
+        this.fsync = fsync;
+    }
+
+    // Feeds every complete record to "replay", in the order they were written
+    void replay(Replay replay) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        long complete = 0;
+        try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+             DataInputStream in = new DataInputStream(counting)) {
+            int type;
+            while ((type = in.read()) != -1) {
+                switch (type) {
+                    case OWNER -> replay.owner(in.readInt(), in.readUTF());
+                    case UPSERT -> replay.upsert(in.readLong(), in.readInt(), in.readLong(), in.readLong());
+                    case DELETE -> replay.delete(in.readLong());
+                    default -> throw new IOException("Corrupt write-ahead log " + path + " at byte " + complete);
+                }
+                complete = counting.count;
+            }
+        } catch (EOFException e) {
+            // Torn last record - everything before it is intact
+            try (FileChannel truncate = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                truncate.truncate(complete);
+            }
+        }
+    }
+
+    // Replaces the log with what "snapshot" writes (atomically, via a temporary file) and leaves it open for appending
+    void rewrite(Snapshot snapshot) throws IOException {
+        close();
+        Files.createDirectories(path.getParent());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        open(temporary, StandardOpenOption.TRUNCATE_EXISTING);
+        records = out;
+        try {
+            snapshot.writeTo(this);
+        } finally {
+            records = new DataOutputStream(staged);
+        }
+        out.flush();
+        channel.force(true);
+        close();
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open(path, StandardOpenOption.APPEND);
+    }
+
+    void appendOwner(int index, String name) throws IOException {
+        records.writeByte(OWNER);
+        records.writeInt(index);
+        records.writeUTF(name);
+    }
+
+    void appendUpsert(long id, int owner, long amount, long version) throws IOException {
+        records.writeByte(UPSERT);
+        records.writeLong(id);
+        records.writeInt(owner);
+        records.writeLong(amount);
+        records.writeLong(version);
+    }
+
+    void appendDelete(long id) throws IOException {
+        records.writeByte(DELETE);
+        records.writeLong(id);
+    }
+
+    // Hands the records appended since the last "publish" to the next flush, returning the position "sync" has to reach
+    // for them to be durable
+    synchronized long publish() {
+        pending.write(staged.toByteArray(), 0, staged.size());
+        published += staged.size();
+        staged.reset();
+        return published;
+    }
+
+    // Drops the records appended since the last "publish" - a write that failed halfway leaves nothing in the log
+    void discard() {
+        staged.reset();
+    }
+
+    // Returns once everything published up to "position" is durable, flushing it (and whatever was published with it)
+    // unless another writer's flush already did
+    void sync(long position) throws IOException {
+        if (durable >= position) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (durable >= position) {
+                return;
+            }
+            if (failure != null) {
+                throw new IOException("An earlier flush of the write-ahead log failed", failure);
+            }
+            try {
+                durable = flushPending();
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+        }
+    }
+
+    long durable() {
+        return durable;
+    }
+
+    // Called with "flushLock" held
+    private long flushPending() throws IOException {
+        long end;
+        synchronized (this) {
+            ByteArrayOutputStream batch = pending;
+            pending = flushing;
+            flushing = batch;
+            end = published;
+        }
+        try {
+            flushing.writeTo(out);
+            out.flush();
+            if (fsync) {
+                channel.force(false);
+            }
+        } finally {
+            flushing.reset();
+        }
+        return end;
+    }
+
+    private void open(Path file, StandardOpenOption mode) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+    }
+
+    // Flushes whatever was published but not synced yet, then closes the file
+    @Override
+    public void close() throws IOException {
+        synchronized (flushLock) {
+            if (out != null) {
+                try {
+                    if (failure == null) {
+                        durable = flushPending();
+                    }
+                } finally {
+                    out.close();
+                    out = null;
+                    channel = null;
+                }
+            }
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.cashcard;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+// "cashcard.changes.*" - the per-owner change feed behind GET /cashcards/changes, see "CashCardChangeFeed"
+@ConfigurationProperties("cashcard.changes")
+record ChangeFeedProperties(
+        // Recent events kept per owner, for subscribers that reconnect with "Last-Event-ID"
+        @DefaultValue("256") int bufferSize,
+        // Events waiting to be written to one subscriber - a subscriber that falls further behind is disconnected
+        @DefaultValue("64") int subscriberQueue,
+        @DefaultValue("16") int maxSubscribersPerOwner,
+        // A comment line sent to idle subscribers, so proxies keep the connection open and dead ones are noticed
+        @DefaultValue("15s") Duration heartbeat,
+        // Streams end after this long and the client reconnects (resuming from its last event)
+        @DefaultValue("30m") Duration timeout,
+        // How long an owner's recent events are kept after their last subscriber left
+        @DefaultValue("5m") Duration retention) {
+}
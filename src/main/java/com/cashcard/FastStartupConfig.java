@@ -0,0 +1,30 @@
+package com.cashcard;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.web.SecurityFilterChain;
+
+import javax.sql.DataSource;
+
+// Only matters with "spring.main.lazy-initialization=true" (the "fast-startup" profile): everything else is created
+// on first use, but the Beans that serve every request are still created at startup - together with what they
+// depend on (the "UserDetailsService" and its password hashes, the schema initialization...) - so the first
+// "GET /cashcards/{id}" does not pay for them.
+@Configuration
+class FastStartupConfig {
+
+    // Static - it is looked up while the Bean definitions are processed, before any other Bean of this class exists
+    @Bean
+    static LazyInitializationExcludeFilter hotPathBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(
+                CashCardController.class,
+                CashCardRepository.class,
+                SecurityFilterChain.class,
+                AuthenticationProvider.class,
+                CacheManager.class,
+                DataSource.class);
+    }
+}
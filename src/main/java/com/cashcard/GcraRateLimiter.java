@@ -0,0 +1,101 @@
+package com.cashcard;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Token buckets kept as the Generic Cell Rate Algorithm (GCRA): instead of a token count plus a refill timestamp,
+// each bucket is a single number - the "theoretical arrival time" (TAT) at which it would be full again.
+// A request is allowed if moving the TAT forward by one emission interval keeps it within "burst" intervals of now.
+//
+// One "AtomicLong" per bucket, updated with compare-and-set, so admitting a request never takes a lock.
+// A bucket whose TAT has passed is full - exactly what a missing bucket means - so those can be dropped at any time,
+// which is how the number of buckets stays bounded.
+//
+// Times come from a monotonic nanosecond source ("System::nanoTime" outside tests), not the wall clock: a wall clock
+// stepped back by NTP would leave every TAT in the future and throttle every active owner until it caught up.
+// Those values only mean something relative to each other, so they are always compared by subtracting.
+final class GcraRateLimiter<K> {
+    private final int maxBuckets;
+    private final LongSupplier nanoTime;
+    private final ConcurrentHashMap<K, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    // No bucket the last sweep kept refills before this
+    private volatile long nextRefillNanos;
+
+    GcraRateLimiter(int maxBuckets, LongSupplier nanoTime) {
+        this.maxBuckets = maxBuckets;
+        this.nanoTime = nanoTime;
+        this.nextRefillNanos = nanoTime.getAsLong();
+    }
+
+    // Returns 0 if the request is allowed, or else how many nanoseconds to wait before the next one would be
+    long tryAcquire(K key, double ratePerSecond, int burst) {
+        long now = nanoTime.getAsLong();
+        long interval = (long) (1_000_000_000L / ratePerSecond);
+        long tolerance = interval * burst;
+
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = newBucket(key, now);
+            if (bucket == null) {
+                // Every bucket is in use - admit rather than grow, the global concurrency limit still applies
+                return 0;
+            }
+        }
+        while (true) {
+            long tat = bucket.get();
+            long next = (tat - now > 0 ? tat : now) + interval;
+            if (next - now > tolerance) {
+                return next - now - tolerance;
+            }
+            if (bucket.compareAndSet(tat, next)) {
+                return 0;
+            }
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    private AtomicLong newBucket(K key, long now) {
+        if (buckets.size() >= maxBuckets) {
+            // A TAT only moves forward, so nothing the last sweep kept can be dropped before the earliest refill it saw.
+            // A map full of live buckets is therefore swept once per refill, not for every new key that finds it full.
+            // Buckets added since may refill sooner; they wait until then (new keys are admitted untracked meanwhile).
+            if (now - nextRefillNanos >= 0) {
+                sweep(now);
+            }
+            if (buckets.size() >= maxBuckets) {
+                return buckets.get(key);
+            }
+        }
+        AtomicLong created = new AtomicLong(now);
+        AtomicLong existing = buckets.putIfAbsent(key, created);
+        return existing != null ? existing : created;
+    }
+
+    // Drops the buckets that have refilled completely. One thread sweeps, the others carry on without waiting.
+    // A request racing with the removal of its bucket is admitted without being counted - at most one per dropped bucket.
+    private void sweep(long now) {
+        if (sweeping.compareAndSet(false, true)) {
+            try {
+                long soonest = Long.MAX_VALUE;
+                for (Iterator<AtomicLong> iterator = buckets.values().iterator(); iterator.hasNext(); ) {
+                    long untilFull = iterator.next().get() - now;
+                    if (untilFull <= 0) {
+                        iterator.remove();
+                    } else {
+                        soonest = Math.min(soonest, untilFull);
+                    }
+                }
+                nextRefillNanos = soonest == Long.MAX_VALUE ? now : now + soonest;
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.cashcard;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.common.KeyValues;
+import org.springframework.http.server.observation.DefaultServerRequestObservationConvention;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+// Adds a "handler" tag to the "http.server.requests" timer with the name of the controller method that served the request
+// (findById, createCashCard, findAll, putCashCard, ...), so latency can be broken down per handler method.
+// Spring Boot uses this convention instead of the default one because it is a Bean.
+@Component
+class HandlerMethodObservationConvention extends DefaultServerRequestObservationConvention {
+    private static final String HANDLER = "handler";
+    private static final KeyValue NO_HANDLER = KeyValue.of(HANDLER, "none");
+
+    @Override
+    public KeyValues getLowCardinalityKeyValues(ServerRequestObservationContext context) {
+        return super.getLowCardinalityKeyValues(context).and(handler(context));
+    }
+
+    private static KeyValue handler(ServerRequestObservationContext context) {
+        if (context.getCarrier().getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod handlerMethod) {
+            return KeyValue.of(HANDLER, handlerMethod.getMethod().getName());
+        }
+        return NO_HANDLER;
+    }
+}
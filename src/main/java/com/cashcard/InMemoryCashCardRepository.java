@@ -0,0 +1,854 @@
+package com.cashcard;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Alternative "CashCardRepository" that serves everything from memory, selected with "cashcard.repository=memory".
+// As the @Primary "CashCardRepository" it replaces the Spring Data JDBC one everywhere - no SQL, no row mapping,
+// and the only allocation on a read is the "CashCard" handed back.
+//
+// Storage is a "structure of arrays": one slot per card in parallel primitive arrays (id, amount, version, owner index),
+// found by id through a primitive long -> int map. Owner names are interned once into a dense index. Each owner has a
+// partition with two sorted arrays of slots, one by (amount, id) and one by id, so pages and keyset slices in either
+// order are a binary search plus a copy of the rows returned.
+//
+// Durability comes from "CashCardWriteAheadLog": every write is appended and flushed (fsync'd unless
+// "cashcard.repository.memory.fsync=false") before the write returns. On startup the log is replayed, or, if there is
+// none yet, the cards are loaded from the "cash_card" table once.
+//
+// One read/write lock guards the memory: reads run in parallel, writes one at a time. The disk flush happens after the
+// write lock is released, so nobody waits behind it but the writers whose records it carries - and writers that
+// arrive during a flush share the next one (group commit). A reader may therefore see a change up to one flush
+// before it is durable.
+// A write that fails halfway through is undone in memory and its records are dropped from the log. If a flush fails,
+// every write not yet durable is undone and all further writes are refused, rather than acknowledging changes that
+// would be lost.
+//
+// The "cash_card_summary" table is not used. Summaries are kept in the partitions, and the drift check compares them
+// with aggregates recomputed from the card slots.
+@Component
+@Primary
+@ConditionalOnProperty(name = "cashcard.repository", havingValue = "memory")
+class InMemoryCashCardRepository implements CashCardRepository, DisposableBean {
+    private static final int FREE = -1;
+    private static final String SELECT_ALL = "SELECT id, amount, owner, version FROM cash_card";
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CashCardWriteAheadLog log;
+    private final CacheManager cacheManager;
+    private final int exportChunkSize;
+    // Guarded by the write lock, like the two below
+    private IOException logFailure;
+    // What the current write changed, so it can be undone if it fails
+    private final List<Undo> undo = new ArrayList<>();
+    // What the writes not yet durable changed, oldest first, so they can be undone if their flush fails
+    private final ArrayDeque<UndoneUntil> notDurable = new ArrayDeque<>();
+
+    private long[] ids = new long[1024];
+    private long[] amounts = new long[1024];
+    private long[] versions = new long[1024];
+    // Index into "partitions", FREE for an unused slot
+    private int[] owners = new int[1024];
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private final LongIntHashMap slotById = new LongIntHashMap(1024);
+    private long nextId = 1;
+
+    private final Map<String, Integer> ownerIndex = new HashMap<>();
+    private final List<Partition> partitions = new ArrayList<>();
+
+    InMemoryCashCardRepository(JdbcTemplate jdbcTemplate, CacheManager cacheManager,
+                               @Value("${cashcard.repository.memory.wal-file:data/cashcards.wal}") String walFile,
+                               @Value("${cashcard.repository.memory.fsync:true}") boolean fsync,
+                               @Value("${cashcard.export.fetch-size:500}") int exportChunkSize) throws IOException {
+        this.cacheManager = cacheManager;
+        this.exportChunkSize = exportChunkSize;
+        this.log = new CashCardWriteAheadLog(Path.of(walFile), fsync);
+
+        // Owner indexes in the log are the ones of the process that wrote it - map them to this process' indexes
+        List<Integer> loggedOwners = new ArrayList<>();
+        log.replay(new CashCardWriteAheadLog.Replay() {
+            @Override
+            public void owner(int index, String name) {
+                while (loggedOwners.size() <= index) {
+                    loggedOwners.add(FREE);
+                }
+                loggedOwners.set(index, intern(name));
+            }
+
+            @Override
+            public void upsert(long id, int owner, long amount, long version) {
+                applyUpsert(id, loggedOwners.get(owner), amount, version);
+            }
+
+            @Override
+            public void delete(long id) {
+                applyDelete(id);
+            }
+        });
+        if (slotById.size() == 0) {
+            jdbcTemplate.query(SELECT_ALL, (RowCallbackHandler) rs ->
+                    applyUpsert(rs.getLong(1), intern(rs.getString(3)), rs.getLong(2), rs.getLong(4)));
+        }
+        log.rewrite(this::writeSnapshot);
+    }
+
+    // ----- Lookups by id -----
+
+    @Override
+    public CashCard findByIdAndOwner(Long id, String owner) {
+        return read(() -> {
+            int slot = slotOf(id, owner);
+            return slot == FREE ? null : card(slot);
+        });
+    }
+
+    @Override
+    public boolean existsByIdAndOwner(Long id, String owner) {
+        return read(() -> slotOf(id, owner) != FREE);
+    }
+
+    @Override
+    public Optional<CashCard> findById(Long id) {
+        return read(() -> {
+            int slot = slotById.get(id);
+            return slot == LongIntHashMap.MISSING ? Optional.empty() : Optional.of(card(slot));
+        });
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return read(() -> slotById.get(id) != LongIntHashMap.MISSING);
+    }
+
+    @Override
+    public Iterable<CashCard> findAllById(Iterable<Long> requestedIds) {
+        return read(() -> {
+            List<CashCard> found = new ArrayList<>();
+            for (Long id : requestedIds) {
+                int slot = slotById.get(id);
+                if (slot != LongIntHashMap.MISSING) {
+                    found.add(card(slot));
+                }
+            }
+            return found;
+        });
+    }
+
+    // ----- Owner-scoped lists -----
+
+    @Override
+    public List<CashCard> findByOwner(String owner, Pageable pageable) {
+        return read(() -> {
+            Partition partition = partitionOf(owner);
+            if (partition == null) {
+                return List.of();
+            }
+            int size = partition.size;
+            int from = pageable.isPaged() ? (int) Math.min(pageable.getOffset(), size) : 0;
+            int to = pageable.isPaged() ? (int) Math.min((long) from + pageable.getPageSize(), size) : size;
+
+            // A single "amount" or "id" order is served straight from the matching index, anything else is sorted here
+            List<Sort.Order> orders = pageable.getSort().toList();
+            int[] index;
+            boolean descending = false;
+            if (orders.isEmpty() || (orders.size() == 1 && orders.get(0).getProperty().equals("amount"))) {
+                index = partition.byAmount;
+                descending = !orders.isEmpty() && orders.get(0).isDescending();
+            } else if (orders.size() == 1 && orders.get(0).getProperty().equals("id")) {
+                index = partition.byId;
+                descending = orders.get(0).isDescending();
+            } else {
+                index = sorted(Arrays.copyOf(partition.byId, size), pageable.getSort());
+            }
+
+            List<CashCard> page = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                page.add(card(index[descending ? size - 1 - i : i]));
+            }
+            return page;
+        });
+    }
+
+    @Override
+    public List<CashCard> findFirstSliceByOwner(String owner, int limit) {
+        return read(() -> slice(partitionOf(owner), 0, limit));
+    }
+
+    @Override
+    public List<CashCard> findSliceByOwnerAfter(String owner, long amount, Long id, int limit) {
+        return read(() -> {
+            Partition partition = partitionOf(owner);
+            if (partition == null) {
+                return List.of();
+            }
+            int position = partition.searchByAmount(amount, id);
+            return slice(partition, position >= 0 ? position + 1 : -(position + 1), limit);
+        });
+    }
+
+    // Hands the cards over in chunks, taking the read lock per chunk rather than for the whole (slow, network-bound) export.
+    // Like the database cursor it replaces, each card is exported once even if cards change in between.
+    @Override
+    public void forEachByOwner(String owner, Consumer<CashCard> consumer) {
+        List<CashCard> chunk = findFirstSliceByOwner(owner, exportChunkSize);
+        while (!chunk.isEmpty()) {
+            chunk.forEach(consumer);
+            if (chunk.size() < exportChunkSize) {
+                return;
+            }
+            CashCard last = chunk.get(chunk.size() - 1);
+            chunk = findSliceByOwnerAfter(owner, last.amount(), last.id(), exportChunkSize);
+        }
+    }
+
+    // ----- Unscoped lists (not used by the API, here to complete "CrudRepository") -----
+
+    @Override
+    public Iterable<CashCard> findAll() {
+        return findAll(Sort.by("id"));
+    }
+
+    @Override
+    public Iterable<CashCard> findAll(Sort sort) {
+        return read(() -> cards(sorted(liveSlots(), sort.isSorted() ? sort : Sort.by("id"))));
+    }
+
+    @Override
+    public Page<CashCard> findAll(Pageable pageable) {
+        return read(() -> {
+            int[] slots = sorted(liveSlots(), pageable.getSortOr(Sort.by("id")));
+            if (pageable.isUnpaged()) {
+                return new PageImpl<>(cards(slots));
+            }
+            int from = (int) Math.min(pageable.getOffset(), slots.length);
+            int to = Math.min(from + pageable.getPageSize(), slots.length);
+            return new PageImpl<>(cards(Arrays.copyOfRange(slots, from, to)), pageable, slots.length);
+        });
+    }
+
+    @Override
+    public long count() {
+        return read(slotById::size);
+    }
+
+    // ----- Writes -----
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S extends CashCard> S save(S cashCard) {
+        if (cashCard.owner() == null) {
+            throw new IllegalArgumentException("A CashCard needs an owner");
+        }
+        return (S) write(() -> {
+            int owner = internLogged(cashCard.owner());
+            long id;
+            long version;
+            int slot = cashCard.id() == null ? FREE : slotById.get(cashCard.id());
+            if (slot == FREE) {
+                id = cashCard.id() == null ? nextId : cashCard.id();
+                version = 0;
+            } else {
+                if (cashCard.version() != null && cashCard.version() != versions[slot]) {
+                    throw new OptimisticLockingFailureException("CashCard " + cashCard.id() + " was changed concurrently");
+                }
+                id = cashCard.id();
+                version = versions[slot] + 1;
+            }
+            upsert(id, owner, cashCard.amount(), version);
+            return new CashCard(id, cashCard.amount(), cashCard.owner(), version);
+        });
+    }
+
+    @Override
+    public <S extends CashCard> Iterable<S> saveAll(Iterable<S> cashCards) {
+        List<S> saved = new ArrayList<>();
+        for (S cashCard : cashCards) {
+            saved.add(save(cashCard));
+        }
+        return saved;
+    }
+
+    @Override
+    public boolean updateAmount(Long id, String owner, long amount) {
+        return write(() -> {
+            int slot = slotOf(id, owner);
+            if (slot == FREE) {
+                return false;
+            }
+            upsert(id, owners[slot], amount, versions[slot] + 1);
+            return true;
+        });
+    }
+
+    @Override
+    public boolean updateAmountIfVersion(Long id, String owner, long amount, long version) {
+        return write(() -> {
+            int slot = slotOf(id, owner);
+            if (slot == FREE || versions[slot] != version) {
+                return false;
+            }
+            upsert(id, owners[slot], amount, version + 1);
+            return true;
+        });
+    }
+
+    @Override
+    public List<Long> insertAll(String owner, long[] newAmounts) {
+        List<Long> newIds = write(() -> {
+            int index = internLogged(owner);
+            List<Long> created = new ArrayList<>(newAmounts.length);
+            for (long amount : newAmounts) {
+                long id = nextId;
+                upsert(id, index, amount, 0);
+                created.add(id);
+            }
+            return created;
+        });
+        evict(owner, newIds);
+        return newIds;
+    }
+
+    @Override
+    public int[] updateAmounts(String owner, List<CashCard> cashCards) {
+        int[] updated = write(() -> {
+            int[] rows = new int[cashCards.size()];
+            for (int i = 0; i < rows.length; i++) {
+                CashCard cashCard = cashCards.get(i);
+                int slot = slotOf(cashCard.id(), owner);
+                if (slot != FREE) {
+                    upsert(cashCard.id(), owners[slot], cashCard.amount(), versions[slot] + 1);
+                    rows[i] = 1;
+                }
+            }
+            return rows;
+        });
+        evict(owner, cashCards.stream().map(CashCard::id).toList());
+        return updated;
+    }
+
+    // Both cards change under the one write lock, and are logged and committed together
+    @Override
+    public Outcome transfer(String owner, long fromId, long toId, long amount) {
+        if (fromId == toId || amount <= 0) {
+            throw new IllegalArgumentException("A transfer needs two different cards and a positive amount");
+        }
+        Outcome outcome = write(() -> {
+            int from = slotOf(fromId, owner);
+            int to = slotOf(toId, owner);
+            if (from == FREE || to == FREE) {
+                return Outcome.NOT_FOUND;
+            }
+            if (amounts[from] < amount) {
+                return Outcome.INSUFFICIENT_FUNDS;
+            }
+            upsert(fromId, owners[from], amounts[from] - amount, versions[from] + 1);
+            upsert(toId, owners[to], amounts[to] + amount, versions[to] + 1);
+            return Outcome.COMPLETED;
+        });
+        if (outcome == Outcome.COMPLETED) {
+            evict(owner, List.of(fromId, toId));
+        }
+        return outcome;
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        write(() -> {
+            if (slotById.get(id) != LongIntHashMap.MISSING) {
+                delete(id);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(CashCard cashCard) {
+        deleteById(cashCard.id());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends Long> idsToDelete) {
+        idsToDelete.forEach(this::deleteById);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends CashCard> cashCards) {
+        cashCards.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        write(() -> {
+            for (int slot : liveSlots()) {
+                delete(ids[slot]);
+            }
+            return null;
+        });
+    }
+
+    // ----- Summaries -----
+
+    // Count and total are kept per partition on every write, min and max are the two ends of the amount index
+    @Override
+    public CashCardSummary findSummaryByOwner(String owner) {
+        return read(() -> summaryOf(partitionOf(owner)));
+    }
+
+    // Compares each partition's summary with aggregates recomputed from the card slots themselves, independently of the
+    // partitions - a partition whose count, total or amount index went wrong shows up here
+    @Override
+    public List<CashCardSummaryDrift> findSummaryDrift() {
+        return read(() -> {
+            Map<String, CashCardSummary> recomputed = new HashMap<>();
+            recomputeSummaries(recomputed);
+            List<CashCardSummaryDrift> drift = new ArrayList<>();
+            for (Partition partition : partitions) {
+                CashCardSummary expected = recomputed.getOrDefault(partition.owner, CashCardSummary.EMPTY);
+                CashCardSummary actual = summaryOf(partition);
+                if (!expected.equals(actual)) {
+                    drift.add(new CashCardSummaryDrift(partition.owner, expected, actual));
+                }
+            }
+            return drift;
+        });
+    }
+
+    // Called with the read lock held
+    private void recomputeSummaries(Map<String, CashCardSummary> recomputed) {
+        int ownerCount = partitions.size();
+        long[] count = new long[ownerCount];
+        long[] total = new long[ownerCount];
+        long[] min = new long[ownerCount];
+        long[] max = new long[ownerCount];
+        Arrays.fill(min, Long.MAX_VALUE);
+        Arrays.fill(max, Long.MIN_VALUE);
+        for (int slot = 0; slot < slotCount; slot++) {
+            int owner = owners[slot];
+            if (owner != FREE) {
+                count[owner]++;
+                total[owner] += amounts[slot];
+                min[owner] = Math.min(min[owner], amounts[slot]);
+                max[owner] = Math.max(max[owner], amounts[slot]);
+            }
+        }
+        for (int owner = 0; owner < ownerCount; owner++) {
+            if (count[owner] > 0) {
+                recomputed.put(partitions.get(owner).owner,
+                        new CashCardSummary(count[owner], total[owner], min[owner], max[owner]));
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        lock.writeLock().lock();
+        try {
+            log.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ----- Locking and logging -----
+
+    private interface Write<T> {
+        T apply() throws IOException;
+    }
+
+    private <T> T read(Supplier<T> read) {
+        lock.readLock().lock();
+        try {
+            return read.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Applies and publishes the write under the write lock, then waits for its flush without holding it
+    private <T> T write(Write<T> write) {
+        T result;
+        long logPosition;
+        lock.writeLock().lock();
+        try {
+            if (logFailure != null) {
+                throw new IllegalStateException("The write-ahead log failed, no further writes are accepted", logFailure);
+            }
+            while (!notDurable.isEmpty() && notDurable.peekFirst().logPosition() <= log.durable()) {
+                notDurable.removeFirst();
+            }
+            int ownersBeforeWrite = partitions.size();
+            long nextIdBeforeWrite = nextId;
+            try {
+                result = write.apply();
+            } catch (RuntimeException | Error e) {
+                // Whatever it changed before it failed must neither stay visible nor go to the log with the next write
+                rollBack(undo);
+                nextId = nextIdBeforeWrite;
+                log.discard();
+                // Owners it interned stay, so their records have to go to the log with the next write instead
+                for (int owner = ownersBeforeWrite; owner < partitions.size(); owner++) {
+                    log.appendOwner(owner, partitions.get(owner).owner);
+                }
+                throw e;
+            }
+            logPosition = log.publish();
+            if (!undo.isEmpty()) {
+                notDurable.addLast(new UndoneUntil(logPosition, List.copyOf(undo)));
+            }
+        } catch (IOException e) {
+            failLog(e);
+            throw new UncheckedIOException("Could not write to the write-ahead log", e);
+        } finally {
+            undo.clear();
+            lock.writeLock().unlock();
+        }
+
+        try {
+            log.sync(logPosition);
+        } catch (IOException e) {
+            lock.writeLock().lock();
+            try {
+                failLog(e);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw new UncheckedIOException("Could not write to the write-ahead log", e);
+        }
+        return result;
+    }
+
+    // The first writer to see the log fail puts the store back to its last durable state: the current write (if the
+    // failure came while it held the lock), then every write not yet flushed, newest first. Cached cards may come from
+    // any of those, so the cache goes as well. Called with the write lock held.
+    private void failLog(IOException e) {
+        if (logFailure != null) {
+            return;
+        }
+        logFailure = e;
+        rollBack(undo);
+        for (Iterator<UndoneUntil> newestFirst = notDurable.descendingIterator(); newestFirst.hasNext(); ) {
+            rollBack(newestFirst.next().changes());
+        }
+        notDurable.clear();
+        Cache cache = cacheManager.getCache(CashCardCacheConfig.CASH_CARDS);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    // Changes are applied as they are logged, so later steps of the same write see them (ids handed out, a card updated
+    // twice in one batch). Each one remembers the card as it was before.
+    private void upsert(long id, int owner, long amount, long version) throws IOException {
+        log.appendUpsert(id, owner, amount, version);
+        remember(id);
+        applyUpsert(id, owner, amount, version);
+    }
+
+    private void delete(long id) throws IOException {
+        log.appendDelete(id);
+        remember(id);
+        applyDelete(id);
+    }
+
+    private void remember(long id) {
+        int slot = slotById.get(id);
+        undo.add(slot == LongIntHashMap.MISSING
+                ? new Undo(id, FREE, 0, 0)
+                : new Undo(id, owners[slot], amounts[slot], versions[slot]));
+    }
+
+    // Puts every card a write touched back the way it was, newest change first.
+    // Owners it interned stay, as empty partitions, and ids it handed out are not handed out again.
+    private void rollBack(List<Undo> changes) {
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            Undo previous = changes.get(i);
+            if (previous.owner() == FREE) {
+                applyDelete(previous.id());
+            } else {
+                applyUpsert(previous.id(), previous.owner(), previous.amount(), previous.version());
+            }
+        }
+    }
+
+    // A card before a write changed it - "owner" is FREE if it did not exist
+    private record Undo(long id, int owner, long amount, long version) {
+    }
+
+    // A published write's changes, and the log position that makes it durable
+    private record UndoneUntil(long logPosition, List<Undo> changes) {
+    }
+
+    private int internLogged(String owner) throws IOException {
+        Integer index = ownerIndex.get(owner);
+        if (index != null) {
+            return index;
+        }
+        int created = intern(owner);
+        log.appendOwner(created, owner);
+        return created;
+    }
+
+    private void writeSnapshot(CashCardWriteAheadLog snapshot) throws IOException {
+        for (int owner = 0; owner < partitions.size(); owner++) {
+            snapshot.appendOwner(owner, partitions.get(owner).owner);
+        }
+        for (int slot : liveSlots()) {
+            snapshot.appendUpsert(ids[slot], owners[slot], amounts[slot], versions[slot]);
+        }
+    }
+
+    private void evict(String owner, List<Long> changedIds) {
+        Cache cache = cacheManager.getCache(CashCardCacheConfig.CASH_CARDS);
+        if (cache != null) {
+            changedIds.forEach(id -> cache.evict(new SimpleKey(id, owner)));
+        }
+    }
+
+    // ----- Storage -----
+
+    private int intern(String owner) {
+        return ownerIndex.computeIfAbsent(owner, name -> {
+            partitions.add(new Partition(name));
+            return partitions.size() - 1;
+        });
+    }
+
+    private Partition partitionOf(String owner) {
+        Integer index = ownerIndex.get(owner);
+        return index == null ? null : partitions.get(index);
+    }
+
+    // The card's slot if it exists and belongs to "owner", FREE otherwise
+    private int slotOf(Long id, String owner) {
+        if (id == null) {
+            return FREE;
+        }
+        int slot = slotById.get(id);
+        if (slot == LongIntHashMap.MISSING) {
+            return FREE;
+        }
+        Integer index = ownerIndex.get(owner);
+        return index != null && owners[slot] == index ? slot : FREE;
+    }
+
+    private void applyUpsert(long id, int owner, long amount, long version) {
+        int slot = slotById.get(id);
+        if (slot == LongIntHashMap.MISSING) {
+            slot = allocateSlot();
+            ids[slot] = id;
+            slotById.put(id, slot);
+            nextId = Math.max(nextId, id + 1);
+        } else if (owners[slot] == owner && amounts[slot] == amount) {
+            versions[slot] = version;
+            return;
+        } else {
+            partitions.get(owners[slot]).remove(slot);
+        }
+        amounts[slot] = amount;
+        versions[slot] = version;
+        owners[slot] = owner;
+        partitions.get(owner).add(slot);
+    }
+
+    private void applyDelete(long id) {
+        int slot = slotById.get(id);
+        if (slot == LongIntHashMap.MISSING) {
+            return;
+        }
+        partitions.get(owners[slot]).remove(slot);
+        owners[slot] = FREE;
+        slotById.remove(id);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            owners = Arrays.copyOf(owners, capacity);
+        }
+        return slotCount++;
+    }
+
+    private int[] liveSlots() {
+        int[] live = new int[slotById.size()];
+        int n = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (owners[slot] != FREE) {
+                live[n++] = slot;
+            }
+        }
+        return live;
+    }
+
+    private CashCard card(int slot) {
+        return new CashCard(ids[slot], amounts[slot], partitions.get(owners[slot]).owner, versions[slot]);
+    }
+
+    private List<CashCard> cards(int[] slots) {
+        List<CashCard> cards = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            cards.add(card(slot));
+        }
+        return cards;
+    }
+
+    private List<CashCard> slice(Partition partition, int from, int limit) {
+        if (partition == null) {
+            return List.of();
+        }
+        int to = (int) Math.min((long) from + limit, partition.size);
+        List<CashCard> slice = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            slice.add(card(partition.byAmount[i]));
+        }
+        return slice;
+    }
+
+    private CashCardSummary summaryOf(Partition partition) {
+        if (partition == null || partition.size == 0) {
+            return CashCardSummary.EMPTY;
+        }
+        return new CashCardSummary(partition.size, partition.total,
+                amounts[partition.byAmount[0]], amounts[partition.byAmount[partition.size - 1]]);
+    }
+
+    // The general (slow) path for sorts the indexes do not cover
+    private int[] sorted(int[] slots, Sort sort) {
+        Comparator<Integer> comparator = null;
+        for (Sort.Order order : sort) {
+            Comparator<Integer> next = switch (order.getProperty()) {
+                case "id" -> Comparator.comparingLong(slot -> ids[slot]);
+                case "amount" -> Comparator.comparingLong(slot -> amounts[slot]);
+                case "version" -> Comparator.comparingLong(slot -> versions[slot]);
+                case "owner" -> Comparator.comparing(slot -> partitions.get(owners[slot]).owner);
+                default -> throw new IllegalArgumentException("No property " + order.getProperty() + " to sort CashCards by");
+            };
+            if (order.isDescending()) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        if (comparator == null) {
+            return slots;
+        }
+        return Arrays.stream(slots).boxed().sorted(comparator).mapToInt(Integer::intValue).toArray();
+    }
+
+    // One owner's cards, as two arrays of slots kept sorted by (amount, id) and by id.
+    // Inserting or removing shifts the tail of each array with one "System.arraycopy".
+    private final class Partition {
+        final String owner;
+        int[] byAmount = new int[8];
+        int[] byId = new int[8];
+        int size;
+        long total;
+
+        Partition(String owner) {
+            this.owner = owner;
+        }
+
+        void add(int slot) {
+            if (size == byAmount.length) {
+                byAmount = Arrays.copyOf(byAmount, size * 2);
+                byId = Arrays.copyOf(byId, size * 2);
+            }
+            insertAt(byAmount, -(searchByAmount(amounts[slot], ids[slot]) + 1), slot);
+            insertAt(byId, -(searchById(ids[slot]) + 1), slot);
+            size++;
+            total += amounts[slot];
+        }
+
+        // Must run before the slot's amount changes, the position is found by the current amount
+        void remove(int slot) {
+            removeAt(byAmount, searchByAmount(amounts[slot], ids[slot]));
+            removeAt(byId, searchById(ids[slot]));
+            size--;
+            total -= amounts[slot];
+        }
+
+        // Like "Arrays.binarySearch": the position, or -(insertion point) - 1 when there is no such card
+        int searchByAmount(long amount, long id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int slot = byAmount[mid];
+                int comparison = amounts[slot] != amount ? Long.compare(amounts[slot], amount) : Long.compare(ids[slot], id);
+                if (comparison < 0) {
+                    low = mid + 1;
+                } else if (comparison > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        int searchById(long id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long candidate = ids[byId[mid]];
+                if (candidate < id) {
+                    low = mid + 1;
+                } else if (candidate > id) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private void insertAt(int[] index, int position, int slot) {
+            System.arraycopy(index, position, index, position + 1, size - position);
+            index[position] = slot;
+        }
+
+        private void removeAt(int[] index, int position) {
+            System.arraycopy(index, position + 1, index, position, size - position - 1);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.cashcard;
+
+import java.util.Arrays;
+
+// Open-addressing hash map from "long" keys to "int" values, without boxing either of them.
+// Linear probing over one "long[]" of keys and one "int[]" of values; deletion uses backward shifting, so there are
+// no tombstones and lookups never slow down after many removals. Not thread-safe - callers lock around it.
+final class LongIntHashMap {
+    static final int MISSING = -1;
+    private static final long FREE = 0L;
+
+    // Key 0 marks a free slot, so the (rare) key 0 is kept on the side
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    int get(long key) {
+        if (key == FREE) {
+            return hasZeroKey ? zeroValue : MISSING;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long candidate = keys[i];
+            if (candidate == key) {
+                return values[i];
+            }
+            if (candidate == FREE) {
+                return MISSING;
+            }
+        }
+    }
+
+    void put(long key, int value) {
+        if (key == FREE) {
+            if (!hasZeroKey) {
+                size++;
+            }
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int i = slot(key);
+        while (keys[i] != FREE && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == FREE) {
+            keys[i] = key;
+            // Keep the table at most half full, which keeps probe sequences short
+            if (++size * 2 > keys.length) {
+                values[i] = value;
+                grow();
+                return;
+            }
+        }
+        values[i] = value;
+    }
+
+    void remove(long key) {
+        if (key == FREE) {
+            if (hasZeroKey) {
+                size--;
+            }
+            hasZeroKey = false;
+            return;
+        }
+        int i = slot(key);
+        while (keys[i] != key) {
+            if (keys[i] == FREE) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        size--;
+        // Shift later entries of the same probe run back into the gap
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = FREE;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int j = slot(oldKeys[i]);
+                while (keys[j] != FREE) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    // Ids are mostly sequential - mix the bits so they do not land in neighbouring slots
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
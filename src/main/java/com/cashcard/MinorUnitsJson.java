@@ -0,0 +1,181 @@
+package com.cashcard;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadCapability;
+import com.fasterxml.jackson.core.StreamWriteCapability;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+// JSON mapping for amounts held as a "long" of minor units (cents).
+// On the wire an amount is still a plain decimal number - 12345 cents is written as 123.45, 100 cents as 1.0 -
+// exactly what the old "Double" amount produced, so clients see no difference.
+// Both directions work on the characters of the number directly, without going through "Double" or "BigDecimal".
+final class MinorUnitsJson {
+    // Enough for "-92233720368547758.08" (Long.MIN_VALUE cents)
+    private static final int MAX_CHARS = 21;
+    // One buffer per thread for the serializer, instead of a new one for every amount written.
+    // The generator copies the characters out before "writeNumber" returns, so the buffer is free again right after.
+    private static final ThreadLocal<char[]> FORMAT_BUFFER = ThreadLocal.withInitial(() -> new char[MAX_CHARS]);
+
+    private MinorUnitsJson() {
+    }
+
+    static final class Serializer extends StdScalarSerializer<Long> {
+
+        Serializer() {
+            super(Long.class);
+        }
+
+        @Override
+        public void serialize(Long cents, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            // Binary formats (no textual numbers) get an exact decimal instead.
+            // Asked through the capability - "canWriteFormattedNumbers()" is false for the UTF-8 (byte) JSON generator,
+            // the one Spring MVC and "writeValueAsBytes" use.
+            if (!generator.getWriteCapabilities().isEnabled(StreamWriteCapability.CAN_WRITE_FORMATTED_NUMBERS)
+                    || cents == Long.MIN_VALUE) {
+                generator.writeNumber(BigDecimal.valueOf(cents, 2));
+                return;
+            }
+            char[] buffer = FORMAT_BUFFER.get();
+            int start = format(cents, buffer);
+            generator.writeNumber(buffer, start, buffer.length - start);
+        }
+    }
+
+    static final class Deserializer extends StdScalarDeserializer<Long> {
+
+        Deserializer() {
+            super(Long.class);
+        }
+
+        @Override
+        public Long deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.VALUE_NUMBER_INT) {
+                try {
+                    return Math.multiplyExact(parser.getLongValue(), 100L);
+                } catch (ArithmeticException e) {
+                    return (Long) context.handleWeirdNumberValue(Long.class, parser.getNumberValue(), "amount out of range");
+                }
+            }
+            if (token == JsonToken.VALUE_NUMBER_FLOAT && parser.getReadCapabilities().isEnabled(StreamReadCapability.EXACT_FLOATS)) {
+                // Binary formats hand over a binary double or decimal - there are no characters to parse
+                return toMinorUnits(parser, context, parser.getDecimalValue());
+            }
+            if (token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_STRING) {
+                char[] chars = parser.getTextCharacters();
+                int offset = parser.getTextOffset();
+                int length = parser.getTextLength();
+                try {
+                    return parse(chars, offset, length);
+                } catch (NumberFormatException e) {
+                    // Rare shapes such as exponents ("1.5E2") take the slow path
+                    try {
+                        return toMinorUnits(parser, context, new BigDecimal(chars, offset, length));
+                    } catch (NumberFormatException notANumber) {
+                        return (Long) context.handleWeirdStringValue(Long.class, parser.getText(), "not a decimal amount");
+                    }
+                }
+            }
+            return (Long) context.handleUnexpectedToken(Long.class, parser);
+        }
+
+        private static Long toMinorUnits(JsonParser parser, DeserializationContext context, BigDecimal amount) throws IOException {
+            BigDecimal cents = amount.movePointRight(2);
+            try {
+                return cents.longValueExact();
+            } catch (ArithmeticException e) {
+                String problem = cents.stripTrailingZeros().scale() > 0
+                        ? "amount must have at most 2 decimal places" : "amount out of range";
+                return (Long) context.handleWeirdNumberValue(Long.class, amount, problem);
+            }
+        }
+    }
+
+    // Writes "cents" right-aligned into "buffer" with at least one fraction digit, and returns where it starts
+    static int format(long cents, char[] buffer) {
+        boolean negative = cents < 0;
+        long remaining = Math.abs(cents);
+        int fraction = (int) (remaining % 100);
+        remaining /= 100;
+
+        int position = buffer.length;
+        if (fraction % 10 == 0) {
+            buffer[--position] = (char) ('0' + fraction / 10);
+        } else {
+            buffer[--position] = (char) ('0' + fraction % 10);
+            buffer[--position] = (char) ('0' + fraction / 10);
+        }
+        buffer[--position] = '.';
+        do {
+            buffer[--position] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining > 0);
+        if (negative) {
+            buffer[--position] = '-';
+        }
+        return position;
+    }
+
+    // Parses "[-]digits[.digits]" into cents. Throws "NumberFormatException" for anything else, including more than
+    // two significant decimal places ("1.230" is fine, "1.234" is not) and values that do not fit a "long".
+    static long parse(char[] chars, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = false;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+
+        long whole = 0;
+        int wholeDigits = 0;
+        while (i < end && isDigit(chars[i])) {
+            whole = whole * 10 + (chars[i] - '0');
+            if (whole < 0 || ++wholeDigits > 17) {
+                throw new NumberFormatException("Amount out of range");
+            }
+            i++;
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (i < end && chars[i] == '.') {
+            i++;
+            while (i < end && isDigit(chars[i])) {
+                int digit = chars[i] - '0';
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + digit;
+                    fractionDigits++;
+                } else if (digit != 0) {
+                    throw new NumberFormatException("More than 2 decimal places");
+                }
+                i++;
+            }
+        }
+        if (i != end || (wholeDigits == 0 && fractionDigits == 0)) {
+            throw new NumberFormatException("Not a plain decimal amount");
+        }
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+
+        // Up to 17 whole digits pass the loop above, but only up to 92233720368547758 still fits once turned into cents
+        if (whole > (Long.MAX_VALUE - fraction) / 100) {
+            throw new NumberFormatException("Amount out of range");
+        }
+        long cents = whole * 100 + fraction;
+        return negative ? -cents : cents;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,139 @@
+package com.cashcard;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Which shard each owner lives on. The table "cash_card_owner_shard" on shard 0 is the record, shared by every
+// application instance. Each instance keeps the entries it has used in memory, so routing a request is a map lookup.
+//
+// An owner is placed once - by "OwnerShardRing" the first time it is seen - and only changes shard when
+// "ShardRebalancer" moves it. Changing the number of shards therefore moves nobody by itself.
+// Owners that already have cards on a shard but no directory entry (a single database turned into shard 0, or cards
+// loaded by "spring.sql.init" scripts) are adopted where their cards are when the directory starts.
+//
+// An instance's copy goes stale when another instance moves an owner. "ShardRoutingInterceptor" notices - the source
+// shard refuses writes for a moved owner, and finds none of its cards - and calls "refresh" to read the entry again.
+class OwnerShardDirectory {
+    private static final String CREATE = """
+            CREATE TABLE IF NOT EXISTS cash_card_owner_shard
+            (OWNER VARCHAR(256) NOT NULL PRIMARY KEY, SHARD INT NOT NULL)""";
+    private static final String SELECT_ALL = "SELECT owner, shard FROM cash_card_owner_shard";
+    private static final String SELECT_ONE = "SELECT shard FROM cash_card_owner_shard WHERE owner = ?";
+    private static final String INSERT = "INSERT INTO cash_card_owner_shard (owner, shard) VALUES (?, ?)";
+    private static final String SWITCH = "UPDATE cash_card_owner_shard SET shard = ? WHERE owner = ? AND shard = ?";
+    private static final String SELECT_OWNERS_WITH_CARDS = "SELECT owner FROM cash_card_summary";
+    private static final String MERGE = "MERGE INTO cash_card_owner_shard (owner, shard) KEY (owner) VALUES (?, ?)";
+
+    private final List<JdbcTemplate> shards;
+    private final OwnerShardRing ring;
+    private final JdbcTemplate directory;
+    private final Map<String, Integer> shardByOwner = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock[] locks;
+
+    OwnerShardDirectory(List<JdbcTemplate> shards, OwnerShardRing ring, int lockStripes) {
+        this.shards = List.copyOf(shards);
+        this.ring = ring;
+        this.directory = shards.get(0);
+        this.locks = new ReentrantReadWriteLock[lockStripes <= 1 ? 1 : Integer.highestOneBit(lockStripes - 1) << 1];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+
+        directory.execute(CREATE);
+        directory.query(SELECT_ALL, (RowCallbackHandler) rs -> shardByOwner.put(rs.getString(1), checked(rs.getInt(2))));
+
+        Map<String, Integer> adopted = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            int found = shard;
+            shards.get(shard).query(SELECT_OWNERS_WITH_CARDS, (RowCallbackHandler) rs -> {
+                String owner = rs.getString(1);
+                if (shardByOwner.containsKey(owner)) {
+                    return;
+                }
+                Integer previous = adopted.putIfAbsent(owner, found);
+                if (previous != null) {
+                    throw new IllegalStateException("Owner " + owner + " has cards on shards " + previous + " and " + found
+                            + " but no directory entry - move them onto one shard before starting");
+                }
+            });
+        }
+        adopted.forEach((owner, shard) -> {
+            directory.update(MERGE, owner, checked(shard));
+            shardByOwner.put(owner, shard);
+        });
+    }
+
+    int shardCount() {
+        return shards.size();
+    }
+
+    JdbcTemplate shard(int shard) {
+        return shards.get(shard);
+    }
+
+    // The owner's shard as this instance knows it - read from the table the first time, and if the owner is new,
+    // placed on the ring. Callers hold the owner's read lock, so a move by this instance cannot slip in between the
+    // lookup and their use of the shard.
+    int shardOf(String owner) {
+        Integer shard = shardByOwner.get(owner);
+        return shard != null ? shard : refresh(owner);
+    }
+
+    // Reads the owner's entry again, for when this instance's copy may be out of date
+    int refresh(String owner) {
+        List<Integer> recorded = directory.queryForList(SELECT_ONE, Integer.class, owner);
+        if (recorded.isEmpty()) {
+            try {
+                directory.update(INSERT, owner, ring.shardOf(owner));
+            } catch (DuplicateKeyException e) {
+                // Another instance placed it first
+            }
+            recorded = directory.queryForList(SELECT_ONE, Integer.class, owner);
+        }
+        int shard = checked(recorded.get(0));
+        shardByOwner.put(owner, shard);
+        return shard;
+    }
+
+    // Where the ring would place the owner today - differs from "shardOf" after shards were added, until a rebalance
+    int ringShardOf(String owner) {
+        return ring.shardOf(owner);
+    }
+
+    // Requests take the read side for as long as they use the owner's shard, a move takes the write side
+    ReadWriteLock lockOf(String owner) {
+        return locks[(int) (OwnerShardRing.hash(owner) >>> 32) & (locks.length - 1)];
+    }
+
+    // Switches the owner from "source" to "target" - false, and nothing changed, if the entry no longer says "source".
+    // Callers hold the owner's write lock.
+    boolean relocate(String owner, int source, int target) {
+        if (directory.update(SWITCH, checked(target), owner, source) == 0) {
+            return false;
+        }
+        shardByOwner.put(owner, target);
+        return true;
+    }
+
+    // Every owner's shard, read from the table - including owners this instance has never routed
+    Map<String, Integer> placements() {
+        Map<String, Integer> placements = new HashMap<>();
+        directory.query(SELECT_ALL, (RowCallbackHandler) rs -> placements.put(rs.getString(1), rs.getInt(2)));
+        return placements;
+    }
+
+    private int checked(int shard) {
+        if (shard < 0 || shard >= shards.size()) {
+            throw new IllegalStateException("Shard " + shard + " is not configured, there are " + shards.size());
+        }
+        return shard;
+    }
+}
@@ -0,0 +1,69 @@
+package com.cashcard;
+
+import java.util.Arrays;
+
+// Consistent-hash ring that picks the shard for an owner the directory has not seen before.
+// Each shard owns "virtualNodes" points on a ring of 64-bit hashes, and an owner belongs to the first point at or after
+// its own hash. The points of a shard depend only on its number, so adding shard N takes about 1/(N+1) of the owners
+// from the others and leaves everyone else where they were - that is all "ShardRebalancer.rebalance" then has to move.
+final class OwnerShardRing {
+    // Sorted hashes, and the shard each one belongs to
+    private final long[] points;
+    private final int[] shards;
+
+    OwnerShardRing(int shardCount, int virtualNodes) {
+        if (shardCount < 1 || virtualNodes < 1) {
+            throw new IllegalArgumentException("A ring needs at least one shard and one point per shard");
+        }
+        long[] unsorted = new long[shardCount * virtualNodes];
+        for (int shard = 0, i = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < virtualNodes; node++, i++) {
+                unsorted[i] = mix(((long) shard << 32) | node);
+            }
+        }
+        // Sort the points, carrying their shard along
+        Integer[] order = new Integer[unsorted.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compareUnsigned(unsorted[a], unsorted[b]));
+        this.points = new long[unsorted.length];
+        this.shards = new int[unsorted.length];
+        for (int i = 0; i < order.length; i++) {
+            points[i] = unsorted[order[i]];
+            shards[i] = order[i] / virtualNodes;
+        }
+    }
+
+    int shardOf(String owner) {
+        long hash = hash(owner);
+        // Binary search for the first point >= hash, wrapping around to the first point
+        int low = 0;
+        int high = points.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(points[middle], hash) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return shards[low == points.length ? 0 : low];
+    }
+
+    // FNV-1a over the characters, then a final mix to spread similar names - the same on every JVM and across restarts
+    static long hash(String owner) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < owner.length(); i++) {
+            hash = (hash ^ owner.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // MurmurHash3's 64-bit finalizer
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+}
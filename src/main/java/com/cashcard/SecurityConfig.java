@@ -1,7 +1,12 @@
 package com.cashcard;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
@@ -12,27 +17,68 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+
+import java.time.Clock;
+import java.time.Duration;
 
 // @Configuration - tells Spring to use this class to configure Spring and Spring Boot itself.
 // Any Beans specified in this class will now be available to Spring's Auto Configuration engine.
 @Configuration
+@EnableConfigurationProperties(AdmissionControlProperties.class)
 public class SecurityConfig {
 
     // @Bean - Spring Security expects a Bean to configure its Filter Chain
     @Bean
-    SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    SecurityFilterChain filterChain(HttpSecurity http, AdmissionControlProperties admissionControl,
+                                    MeterRegistry meterRegistry) throws Exception {
         // All HTTP requests to "cashcards/" endpoints are required to be authenticated using HTTP Basic Authentication security (username + password)
+        // The health check and the Prometheus scrape endpoint are open, so load balancers and scrapers need no credentials
+        // The summary consistency check scans every card and the shard endpoint moves owners, so only operators ("ADMIN") may use them
+        // The same goes for the metrics and cache statistics endpoints - Prometheus is the way in for dashboards
+        // Anything else is denied, rather than left to whatever a new endpoint or path happens to default to
         // Do not require CSRF security
         http
                 .authorizeHttpRequests(request -> request
                         .requestMatchers("/cashcards/**")
-                        .hasRole("CARD-OWNER"))
+                        .hasRole("CARD-OWNER")
+                        .requestMatchers(EndpointRequest.to("health", "prometheus"))
+                        .permitAll()
+                        .requestMatchers(EndpointRequest.to(CashCardSummaryEndpoint.class, CashCardShardEndpoint.class))
+                        .hasRole("ADMIN")
+                        .requestMatchers(EndpointRequest.to("metrics", "caches"))
+                        .hasRole("ADMIN")
+                        .anyRequest()
+                        .denyAll())
                 .httpBasic(Customizer.withDefaults())
                 .csrf(AbstractHttpConfigurer::disable);
 
+        // Rate limits and load shedding need to know who is asking, so they run right after Basic authentication -
+        // and before any handler or database work. Created here rather than as a Bean, which Spring Boot would
+        // also register as a servlet filter outside the security chain.
+        if (admissionControl.enabled()) {
+            http.addFilterAfter(new AdmissionControlFilter(admissionControl, meterRegistry, System::nanoTime),
+                    BasicAuthenticationFilter.class);
+        }
+
         return http.build();
     }
 
+    // Declaring an "AuthenticationProvider" Bean makes it the one Spring Security authenticates Basic-auth requests with.
+    // It wraps the usual "UserDetailsService" + "PasswordEncoder" check in a bounded, time-expiring cache of successful logins.
+    @Bean
+    CachingAuthenticationProvider authenticationProvider(
+            UserDetailsService userDetailsService,
+            PasswordEncoder passwordEncoder,
+            MeterRegistry meterRegistry,
+            @Value("${cashcard.security.credential-cache.max-size:10000}") int maxSize,
+            @Value("${cashcard.security.credential-cache.ttl:5m}") Duration ttl) {
+        DaoAuthenticationProvider passwordCheck = new DaoAuthenticationProvider();
+        passwordCheck.setUserDetailsService(userDetailsService);
+        passwordCheck.setPasswordEncoder(new TimedPasswordEncoder(passwordEncoder, meterRegistry));
+        return new CachingAuthenticationProvider(passwordCheck, userDetailsService, maxSize, ttl, meterRegistry, Clock.systemUTC());
+    }
+
     @Bean
     PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
@@ -53,7 +99,13 @@ public class SecurityConfig {
                 .password(passwordEncoder.encode("qrs456"))
                 .roles("NON-OWNER")
                 .build();
+        // An operator, for the "ADMIN"-only actuator endpoints - and nothing else
+        UserDetails operator = users
+                .username("olga-operator")
+                .password(passwordEncoder.encode("xyz789"))
+                .roles("ADMIN")
+                .build();
 
-        return new InMemoryUserDetailsManager(wilson, hankOwnsNoCards);
+        return new InMemoryUserDetailsManager(wilson, hankOwnsNoCards, operator);
     }
 }
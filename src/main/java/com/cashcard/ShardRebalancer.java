@@ -0,0 +1,128 @@
+package com.cashcard;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+// Moves owners between shards while the application - every instance of it - keeps serving requests.
+//
+// A move holds the owner's write lock (see "OwnerShardDirectory.lockOf"), so this instance's requests for that owner
+// wait for it while everybody else's carry on. Other instances do not know about that lock, so the move also works
+// through the databases:
+// 1. the owner is listed in the source shard's "cash_card_moved_owner" - from then on its triggers refuse any change
+//    to the owner's cards there (see "CashCardSummaryTrigger"), and the instance that tried looks the owner up again
+// 2. the cards are read under a lock on the owner's summary row - so after every change that got in before step 1
+//    has committed - and copied, same ids and versions so cached cards and "ETag"s stay valid, to the target shard
+// 3. the directory entry is switched from source to target, only if it still says source
+// 4. the cards are deleted on the source shard, which keeps the owner listed
+// A move that fails before step 3 takes the owner off the list again, and the source still has every card; copies
+// left on the target are cleared by the next attempt. Until step 3, other instances' writes for the owner wait for
+// the switch, then go to the target - see "ShardRoutingInterceptor".
+class ShardRebalancer {
+    private static final String SELECT_BY_OWNER = "SELECT id, amount, owner, version FROM cash_card WHERE owner = ?";
+    private static final String INSERT = "INSERT INTO cash_card (id, amount, owner, version) VALUES (?, ?, ?, ?)";
+    private static final String DELETE_BY_OWNER = "DELETE FROM cash_card WHERE owner = ?";
+    private static final String LIST_MOVED = "MERGE INTO cash_card_moved_owner (owner, shard) KEY (owner) VALUES (?, ?)";
+    private static final String UNLIST_MOVED = "DELETE FROM cash_card_moved_owner WHERE owner = ?";
+    private static final String LOCK_SUMMARY = "SELECT card_count FROM cash_card_summary WHERE owner = ? FOR UPDATE";
+    // An owner without cards has no summary row to lock - a placeholder (rolled back) blocks the first insert instead
+    private static final String LOCK_NEW_SUMMARY =
+            "INSERT INTO cash_card_summary (owner, card_count, total, min_amount, max_amount) VALUES (?, 0, 0, 0, 0)";
+
+    private final OwnerShardDirectory directory;
+    private final List<TransactionTemplate> transactions = new ArrayList<>();
+
+    ShardRebalancer(OwnerShardDirectory directory, ShardRoutingDataSource dataSource) {
+        this.directory = directory;
+        for (int shard = 0; shard < dataSource.shardCount(); shard++) {
+            transactions.add(new TransactionTemplate(new DataSourceTransactionManager(dataSource.shard(shard))));
+        }
+    }
+
+    // Moves the owner's cards to "target" and returns how many there were - 0 if the owner already lives there
+    int move(String owner, int target) {
+        if (target < 0 || target >= directory.shardCount()) {
+            throw new IllegalArgumentException("Shard " + target + " is not configured, there are " + directory.shardCount());
+        }
+        Lock lock = directory.lockOf(owner).writeLock();
+        lock.lock();
+        try {
+            // Another instance may have moved the owner since this one last looked
+            int source = directory.refresh(owner);
+            if (source == target) {
+                return 0;
+            }
+            JdbcTemplate from = directory.shard(source);
+            JdbcTemplate to = directory.shard(target);
+
+            List<Object[]> cards;
+            transactions.get(source).executeWithoutResult(status -> from.update(LIST_MOVED, owner, target));
+            try {
+                cards = transactions.get(source).execute(status -> {
+                    lockSummary(from, owner);
+                    List<Object[]> rows = new ArrayList<>();
+                    from.query(SELECT_BY_OWNER, (RowCallbackHandler) rs -> rows.add(
+                            new Object[]{rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getLong(4)}), owner);
+                    // Only there for its lock
+                    status.setRollbackOnly();
+                    return rows;
+                });
+                transactions.get(target).executeWithoutResult(status -> {
+                    // Listed there if the owner lived on the target before
+                    to.update(UNLIST_MOVED, owner);
+                    to.update(DELETE_BY_OWNER, owner);
+                    to.batchUpdate(INSERT, cards);
+                });
+            } catch (RuntimeException e) {
+                transactions.get(source).executeWithoutResult(status -> from.update(UNLIST_MOVED, owner));
+                throw e;
+            }
+            if (!directory.relocate(owner, source, target)) {
+                throw new IllegalStateException("Owner " + owner + " was moved off shard " + source + " by somebody else");
+            }
+            // The triggers let this transaction delete the cards: for everybody else the owner stays listed throughout
+            transactions.get(source).executeWithoutResult(status -> {
+                from.update(UNLIST_MOVED, owner);
+                from.update(DELETE_BY_OWNER, owner);
+                from.update(LIST_MOVED, owner, target);
+            });
+            return cards.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void lockSummary(JdbcTemplate shard, String owner) {
+        if (!shard.queryForList(LOCK_SUMMARY, Long.class, owner).isEmpty()) {
+            return;
+        }
+        try {
+            shard.update(LOCK_NEW_SUMMARY, owner);
+        } catch (DuplicateKeyException e) {
+            // A change that got in before the listing created the row meanwhile - wait for it like for any other
+            shard.queryForList(LOCK_SUMMARY, Long.class, owner);
+        }
+    }
+
+    // Moves every owner whose shard differs from the one the ring picks for it now - after adding shards, this
+    // spreads the existing owners onto them. Returns the moved owners with their new shard.
+    Map<String, Integer> rebalance() {
+        Map<String, Integer> moved = new LinkedHashMap<>();
+        directory.placements().forEach((owner, shard) -> {
+            int target = directory.ringShardOf(owner);
+            if (target != shard) {
+                move(owner, target);
+                moved.put(owner, target);
+            }
+        });
+        return moved;
+    }
+}
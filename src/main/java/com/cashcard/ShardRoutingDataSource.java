@@ -0,0 +1,69 @@
+package com.cashcard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The one "DataSource" the application sees when sharding is on. Each "getConnection" is handed to the shard bound to
+// the current thread, which "ShardRoutingInterceptor" binds around every "CashCardRepository" call - before the
+// repository's own transaction starts, because a transaction keeps the connection it began with.
+// Without a bound shard (startup scripts, health checks, plain "JdbcTemplate" use) connections come from shard 0.
+final class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+
+    private final List<HikariDataSource> shards;
+
+    ShardRoutingDataSource(List<HikariDataSource> shards) {
+        this.shards = List.copyOf(shards);
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        // An unknown shard number is a bug, not a reason to quietly fall back to shard 0
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    int shardCount() {
+        return shards.size();
+    }
+
+    HikariDataSource shard(int shard) {
+        return shards.get(shard);
+    }
+
+    static Integer currentShard() {
+        return CURRENT_SHARD.get();
+    }
+
+    // Binds "shard" to the current thread and returns the previous binding, to be handed back to "restore"
+    static Integer bind(int shard) {
+        Integer previous = CURRENT_SHARD.get();
+        CURRENT_SHARD.set(shard);
+        return previous;
+    }
+
+    static void restore(Integer previous) {
+        if (previous == null) {
+            CURRENT_SHARD.remove();
+        } else {
+            CURRENT_SHARD.set(previous);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return CURRENT_SHARD.get();
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(HikariDataSource::close);
+    }
+}
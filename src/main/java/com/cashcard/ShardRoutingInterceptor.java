@@ -0,0 +1,246 @@
+package com.cashcard;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+// Outermost advice of the sharded "CashCardRepository" - runs before its transaction, query and fragment interceptors,
+// so everything below it (including a transaction's connection) comes from the right shard.
+//
+// Owner-scoped calls go to the owner's shard. The owner is the first "String" argument (every owner-scoped method
+// of "CashCardRepository" takes exactly one), otherwise the owner of a "CashCard" argument, or the one owner shared
+// by an "Iterable" of cards. The call holds the owner's read lock, so "ShardRebalancer" cannot move the owner under it.
+// Streaming calls (the export, which hands cards to a "Consumer" for as long as the client takes to read them) only
+// hold it until the first card arrives: by then the cursor is open on the shard and reads from its own snapshot,
+// which a move deleting the cards afterwards does not change. A slow export never holds up a move, nor - through
+// the waiting move - the other owners on its lock stripe.
+//
+// Another instance may have moved the owner without this one knowing. Then the shard it routes to refuses writes
+// for the owner ("CashCardSummaryTrigger.OWNER_MOVED") and has none of its cards, so a call that was refused, or
+// found nothing, reads the owner's directory entry again and, if it changed, runs once more on the new shard.
+// A refused write whose owner is still in the middle of a move waits up to MOVE_WAIT for the move to finish.
+// Calls that find nothing are rare on the request path (a 404, an owner without cards), so the extra lookup is too.
+// The card cache sits in front of this (on its own proxy), so it only ever sees the answer of the second attempt.
+//
+// Calls that name no owner - "findById", "count", "deleteAll", the summary drift check - run on every shard in turn
+// and their results are combined. They are not on any request path.
+class ShardRoutingInterceptor implements MethodInterceptor {
+    static final Duration MOVE_WAIT = Duration.ofSeconds(10);
+    private static final long MOVE_POLL_MILLIS = 20;
+
+    private final OwnerShardDirectory directory;
+
+    ShardRoutingInterceptor(OwnerShardDirectory directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String owner = ownerOf(invocation);
+        if (owner == null) {
+            return onEveryShard(invocation);
+        }
+        Lock lock = directory.lockOf(owner).readLock();
+        lock.lock();
+        UnlockOnFirstItem<?> streaming = null;
+        Object[] arguments = invocation.getArguments();
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] instanceof Consumer<?> consumer) {
+                streaming = new UnlockOnFirstItem<>(consumer, lock);
+                arguments[i] = streaming;
+            }
+        }
+        // The call as it is now, to run again if it went to a shard the owner has left
+        MethodInvocation again = ((ProxyMethodInvocation) invocation).invocableClone();
+        try {
+            int shard = directory.shardOf(owner);
+            Object result;
+            try {
+                result = onShard(shard, invocation);
+            } catch (RuntimeException e) {
+                // Spring Data JDBC reports it as "DbActionExecutionException", plain JDBC as a "DataAccessException"
+                if (!isOwnerMoved(e)) {
+                    throw e;
+                }
+                return onShard(awaitMove(owner, shard, e), again);
+            }
+            if (streaming != null ? streaming.delivered : found(result)) {
+                return result;
+            }
+            int current = directory.refresh(owner);
+            return current == shard ? result : onShard(current, again);
+        } finally {
+            if (streaming == null) {
+                lock.unlock();
+            } else {
+                streaming.unlockIfStillLocked();
+            }
+        }
+    }
+
+    // The shard the owner was moved to, once the move that refused the write on "shard" has switched the directory
+    private int awaitMove(String owner, int shard, RuntimeException refused) throws InterruptedException {
+        long deadline = System.nanoTime() + MOVE_WAIT.toNanos();
+        while (true) {
+            int current = directory.refresh(owner);
+            if (current != shard) {
+                return current;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new TransientDataAccessResourceException("Owner " + owner + " is still being moved off shard "
+                        + shard + " after " + MOVE_WAIT.toSeconds() + "s", refused);
+            }
+            Thread.sleep(MOVE_POLL_MILLIS);
+        }
+    }
+
+    private static boolean isOwnerMoved(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException e && CashCardSummaryTrigger.OWNER_MOVED.equals(e.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Whether an owner-scoped call found any of the owner's cards - void methods cannot tell, so they count as not
+    private static boolean found(Object result) {
+        return switch (result) {
+            case null -> false;
+            case Boolean found -> found;
+            case Optional<?> optional -> optional.isPresent();
+            case Collection<?> collection -> !collection.isEmpty();
+            case CashCardSummary summary -> summary.count() > 0;
+            case CashCardTransferOperations.Outcome outcome -> outcome != CashCardTransferOperations.Outcome.NOT_FOUND;
+            case int[] rows -> Arrays.stream(rows).anyMatch(row -> row > 0);
+            default -> true;
+        };
+    }
+
+    // Passes items on, releasing the owner's read lock before the first one. Called on the thread that took the lock.
+    private static final class UnlockOnFirstItem<T> implements Consumer<T> {
+        private final Consumer<T> consumer;
+        private final Lock lock;
+        private boolean locked = true;
+        private boolean delivered;
+
+        @SuppressWarnings("unchecked")
+        UnlockOnFirstItem(Consumer<?> consumer, Lock lock) {
+            this.consumer = (Consumer<T>) consumer;
+            this.lock = lock;
+        }
+
+        @Override
+        public void accept(T item) {
+            unlockIfStillLocked();
+            delivered = true;
+            consumer.accept(item);
+        }
+
+        void unlockIfStillLocked() {
+            if (locked) {
+                locked = false;
+                lock.unlock();
+            }
+        }
+    }
+
+    private static Object onShard(int shard, MethodInvocation invocation) throws Throwable {
+        Integer current = ShardRoutingDataSource.currentShard();
+        if (current != null && current != shard && TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("A transaction on shard " + current + " cannot use shard " + shard);
+        }
+        Integer previous = ShardRoutingDataSource.bind(shard);
+        try {
+            return invocation.proceed();
+        } finally {
+            ShardRoutingDataSource.restore(previous);
+        }
+    }
+
+    private Object onEveryShard(MethodInvocation invocation) throws Throwable {
+        for (Class<?> type : invocation.getMethod().getParameterTypes()) {
+            if (Pageable.class.isAssignableFrom(type) || Sort.class.isAssignableFrom(type)) {
+                throw new UnsupportedOperationException(invocation.getMethod().getName()
+                        + " would need a merge sort across shards - use the owner-scoped queries");
+            }
+        }
+        Class<?> returnType = invocation.getMethod().getReturnType();
+        List<Object> results = new ArrayList<>(directory.shardCount());
+        for (int shard = 0; shard < directory.shardCount(); shard++) {
+            // Each shard gets a fresh copy of the rest of the interceptor chain
+            results.add(onShard(shard, ((ProxyMethodInvocation) invocation).invocableClone()));
+        }
+
+        if (returnType == void.class) {
+            return null;
+        }
+        if (returnType == boolean.class) {
+            return results.contains(Boolean.TRUE);
+        }
+        if (returnType == long.class) {
+            return results.stream().mapToLong(result -> (Long) result).sum();
+        }
+        if (returnType == Optional.class) {
+            return results.stream().map(result -> (Optional<?>) result).filter(Optional::isPresent).findFirst()
+                    .orElse(Optional.empty());
+        }
+        if (Iterable.class.isAssignableFrom(returnType) && returnType.isAssignableFrom(List.class)) {
+            List<Object> merged = new ArrayList<>();
+            results.forEach(result -> ((Iterable<?>) result).forEach(merged::add));
+            return merged;
+        }
+        throw new UnsupportedOperationException("Cannot combine the results of " + invocation.getMethod().getName()
+                + " across shards");
+    }
+
+    private static String ownerOf(MethodInvocation invocation) {
+        for (Object argument : invocation.getArguments()) {
+            if (argument instanceof String owner) {
+                return owner;
+            }
+            if (argument instanceof CashCard cashCard) {
+                return requireOwner(cashCard);
+            }
+            if (argument instanceof Iterable<?> items) {
+                String owner = null;
+                for (Object item : items) {
+                    if (!(item instanceof CashCard cashCard)) {
+                        // Ids, not cards
+                        return null;
+                    }
+                    if (owner != null && !owner.equals(cashCard.owner())) {
+                        throw new IllegalArgumentException("Cards of different owners may live on different shards - "
+                                + "write them one owner at a time");
+                    }
+                    owner = requireOwner(cashCard);
+                }
+                if (owner != null) {
+                    return owner;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String requireOwner(CashCard cashCard) {
+        if (cashCard.owner() == null) {
+            throw new IllegalArgumentException("A card without an owner has no shard");
+        }
+        return cashCard.owner();
+    }
+}
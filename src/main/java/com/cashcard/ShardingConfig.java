@@ -0,0 +1,127 @@
+package com.cashcard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.sql.init.SqlDataSourceScriptDatabaseInitializer;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.sql.init.DatabaseInitializationSettings;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// "cashcard.sharding.enabled=true" spreads the Spring Data JDBC "CashCardRepository" over the databases listed in
+// "cashcard.sharding.shards", by owner. Every query of a request is already scoped to one owner, so each one runs on
+// a single shard and shards never need to talk to each other - write throughput grows with the number of databases.
+//
+// - "ShardRoutingDataSource" replaces the "spring.datasource" one and hands out connections of the current shard
+// - "ShardRoutingInterceptor" picks that shard for every repository call, from "OwnerShardDirectory"
+// - ids stay unique across shards: shard "s" only generates ids with "id % MAX_SHARDS == s"
+// - "ShardRebalancer" (and the "cashcardshards" actuator endpoint) moves owners between shards online
+//
+// The usual "spring.sql.init" schema and data scripts run on shard 0, the schema script alone on every other shard.
+// Not used together with "cashcard.repository=memory".
+@Configuration
+@ConditionalOnProperty(name = "cashcard.sharding.enabled", havingValue = "true")
+@EnableConfigurationProperties(ShardingProperties.class)
+class ShardingConfig {
+    // Ids are allocated in strides of this many, one residue per shard
+    static final int MAX_SHARDS = 1024;
+
+    @Bean
+    @Primary
+    ShardRoutingDataSource dataSource(ShardingProperties properties, ObjectProvider<MeterRegistry> meterRegistry,
+                                      ObjectProvider<SqlInitializationProperties> sqlInitialization) {
+        List<ShardingProperties.Shard> shards = properties.shards();
+        if (shards.isEmpty() || shards.size() > MAX_SHARDS) {
+            throw new IllegalStateException("cashcard.sharding.shards needs between 1 and " + MAX_SHARDS + " entries");
+        }
+        List<HikariDataSource> pools = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            ShardingProperties.Shard shard = shards.get(i);
+            HikariDataSource pool = DataSourceBuilder.create().type(HikariDataSource.class)
+                    .url(shard.url()).username(shard.username()).password(shard.password()).build();
+            pool.setPoolName("cashcard-shard-" + i);
+            pool.setMaximumPoolSize(shard.maximumPoolSize());
+            // Per-shard "hikaricp.connections.*" meters, tagged with the pool name
+            meterRegistry.ifAvailable(registry -> pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+            pools.add(pool);
+        }
+
+        // Shard 0 is initialized by Spring Boot like any single database. The other shards get the same schema,
+        // but none of the data scripts - their rows would end up on every shard.
+        sqlInitialization.ifAvailable(sql -> {
+            DatabaseInitializationSettings schemaOnly = SqlDataSourceScriptDatabaseInitializer.getSettings(sql);
+            schemaOnly.setDataLocations(List.of());
+            for (int i = 1; i < pools.size(); i++) {
+                new SqlDataSourceScriptDatabaseInitializer(pools.get(i), schemaOnly).initializeDatabase();
+            }
+        });
+        return new ShardRoutingDataSource(pools);
+    }
+
+    // After the schema scripts, so shard 0's cards (if any) can be adopted
+    @Bean
+    @DependsOnDatabaseInitialization
+    OwnerShardDirectory ownerShardDirectory(ShardRoutingDataSource dataSource, ShardingProperties properties) {
+        List<JdbcTemplate> shards = new ArrayList<>();
+        for (int i = 0; i < dataSource.shardCount(); i++) {
+            shards.add(new JdbcTemplate(dataSource.shard(i)));
+        }
+        allocateIds(shards);
+        return new OwnerShardDirectory(shards, new OwnerShardRing(shards.size(), properties.virtualNodes()),
+                properties.ownerLockStripes());
+    }
+
+    @Bean
+    ShardRebalancer shardRebalancer(OwnerShardDirectory directory, ShardRoutingDataSource dataSource) {
+        return new ShardRebalancer(directory, dataSource);
+    }
+
+    // Adds "ShardRoutingInterceptor" in front of everything else on the "CashCardRepository" proxy Spring Data builds,
+    // including its transaction interceptor. Static, and the directory looked up lazily, because post-processors are
+    // created before ordinary beans.
+    @Bean
+    static BeanPostProcessor shardRoutingRepositoryPostProcessor(ObjectProvider<OwnerShardDirectory> directory) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxyFactory, repository) -> {
+                                if (repository.getRepositoryInterface() == CashCardRepository.class) {
+                                    proxyFactory.addAdvice(0, new ShardRoutingInterceptor(directory.getObject()));
+                                }
+                            }));
+                }
+                return bean;
+            }
+        };
+    }
+
+    // Restarts each shard's identity column at the next free multiple of MAX_SHARDS plus the shard number, above the
+    // highest id on any shard, and steps it by MAX_SHARDS. Ids created before sharding (or on another shard, then
+    // moved) are all below that, so no shard can generate an id that exists anywhere.
+    private static void allocateIds(List<JdbcTemplate> shards) {
+        long highest = 0;
+        for (JdbcTemplate shard : shards) {
+            highest = Math.max(highest, shard.queryForObject("SELECT COALESCE(MAX(id), 0) FROM cash_card", Long.class));
+        }
+        long base = (highest / MAX_SHARDS + 1) * MAX_SHARDS;
+        for (int i = 0; i < shards.size(); i++) {
+            shards.get(i).execute("ALTER TABLE cash_card ALTER COLUMN id RESTART WITH " + (base + i)
+                    + " SET INCREMENT BY " + MAX_SHARDS);
+        }
+    }
+}
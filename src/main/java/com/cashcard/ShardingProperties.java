@@ -0,0 +1,26 @@
+package com.cashcard;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+
+// "cashcard.sharding.*" - spreads the Spring Data JDBC "CashCardRepository" over several databases, see "ShardingConfig".
+// Every owner lives on exactly one shard. Shard 0 also holds the owner directory, and the usual "spring.sql.init"
+// scripts run there, so an existing single database can become shard 0 as it is.
+@ConfigurationProperties("cashcard.sharding")
+record ShardingProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue List<Shard> shards,
+        // Points per shard on the consistent-hash ring - more points spread owners more evenly
+        @DefaultValue("128") int virtualNodes,
+        // Owner lock stripes (a power of two). Moving an owner holds its stripe, so requests of the other owners
+        // on that stripe wait for the move as well
+        @DefaultValue("256") int ownerLockStripes) {
+
+    record Shard(String url,
+                 @DefaultValue("sa") String username,
+                 @DefaultValue("") String password,
+                 @DefaultValue("10") int maximumPoolSize) {
+    }
+}
@@ -0,0 +1,64 @@
+package com.cashcard;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Only active in virtual-thread mode ("spring.threads.virtual.enabled=true").
+// A virtual thread that blocks while inside a "synchronized" block (or native code) cannot unmount from its carrier
+// thread - it "pins" the carrier, and enough pinned carriers starve every other virtual thread.
+// The JDK reports each pin that lasts longer than a threshold as a "jdk.VirtualThreadPinned" Flight Recorder event;
+// this component listens for them in-process, counts them, and logs where they came from.
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+class VirtualThreadPinningMonitor implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 8;
+
+    private final RecordingStream recordingStream;
+    private final Counter pinned;
+
+    VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+                                @Value("${cashcard.virtual-threads.pinned-threshold:20ms}") Duration threshold) {
+        this.pinned = Counter.builder("cashcard.virtual-threads.pinned")
+                .description("Virtual threads that pinned their carrier thread for longer than the threshold")
+                .register(meterRegistry);
+
+        this.recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinned.increment();
+        if (log.isWarnEnabled()) {
+            List<RecordedFrame> frames = event.getStackTrace() == null ? List.of() : event.getStackTrace().getFrames();
+            String stack = frames.stream()
+                    .limit(LOGGED_FRAMES)
+                    .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                            + ":" + frame.getLineNumber())
+                    .collect(Collectors.joining("\n\tat "));
+            log.warn("Virtual thread pinned its carrier for {} ms\n\tat {}", event.getDuration().toMillis(), stack);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        recordingStream.close();
+    }
+}
@@ -1,10 +1,45 @@
 /* A blueprint for how data is stored in a database
     Reflects the CashCard object that we understand, which contains `id` and an `amount`
+    `amount` is stored in minor units (cents), so 123.45 is 12345 - exact, and a plain integer to compare and sort
+    `version` is incremented by every update, so an update can require the version the client last read
  */
 
 CREATE TABLE cash_card
 (
     ID BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-    AMOUNT NUMBER NOT NULL DEFAULT 0,
-    OWNER VARCHAR(256) NOT NULL
-);
\ No newline at end of file
+    AMOUNT BIGINT NOT NULL DEFAULT 0,
+    OWNER VARCHAR(256) NOT NULL,
+    VERSION BIGINT NOT NULL DEFAULT 0
+);
+
+/* Serves every owner-scoped query: lookups by owner, the default "amount ASC" sort of GET /cashcards,
+    and keyset pagination, which seeks to (owner, amount, id) and reads forward without an OFFSET scan
+ */
+CREATE INDEX cash_card_owner_amount_id ON cash_card (OWNER, AMOUNT, ID);
+
+/* Per-owner aggregates behind GET /cashcards/summary, so a summary is one primary key lookup however many cards
+    an owner has. Kept up to date by the row triggers below, inside the transaction of whatever changed `cash_card` -
+    the repository, the JDBC batch fragment or a plain SQL statement alike. TRUNCATE does not fire triggers.
+ */
+CREATE TABLE cash_card_summary
+(
+    OWNER VARCHAR(256) NOT NULL PRIMARY KEY,
+    CARD_COUNT BIGINT NOT NULL,
+    TOTAL BIGINT NOT NULL,
+    MIN_AMOUNT BIGINT NOT NULL,
+    MAX_AMOUNT BIGINT NOT NULL
+);
+
+/* Owners whose cards were moved to another shard (only ever filled when the repository is sharded). The triggers
+    below refuse to change the cards of an owner listed here, so an application instance that still routes the owner
+    to this database cannot write cards that nobody would read - it looks the owner up again instead.
+ */
+CREATE TABLE cash_card_moved_owner
+(
+    OWNER VARCHAR(256) NOT NULL PRIMARY KEY,
+    SHARD INT NOT NULL
+);
+
+CREATE TRIGGER cash_card_summary_insert AFTER INSERT ON cash_card FOR EACH ROW CALL 'com.cashcard.CashCardSummaryTrigger';
+CREATE TRIGGER cash_card_summary_update AFTER UPDATE ON cash_card FOR EACH ROW CALL 'com.cashcard.CashCardSummaryTrigger';
+CREATE TRIGGER cash_card_summary_delete AFTER DELETE ON cash_card FOR EACH ROW CALL 'com.cashcard.CashCardSummaryTrigger';
@@ -0,0 +1,16 @@
+package com.cashcard.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+// Reactive variant of the CashCard API - Spring WebFlux on Netty over R2DBC, with the same "/cashcards" contract as the
+// Spring MVC application. No request holds a thread while it waits for the database; a few event-loop threads serve
+// every connection. Built from its own source set ("src/reactive"), so the servlet stack is not on its classpath.
+@SpringBootApplication
+public class ReactiveCashCardApplication {
+
+	public static void main(String[] args) {
+		SpringApplication.run(ReactiveCashCardApplication.class, args);
+	}
+
+}
@@ -0,0 +1,322 @@
+package com.cashcard.reactive;
+
+import com.cashcard.CashCard;
+import com.cashcard.CashCardBatchResult;
+import com.cashcard.CashCardCursor;
+import com.cashcard.CashCardETag;
+import com.cashcard.CashCardSlice;
+import com.cashcard.CashCardSummary;
+import com.cashcard.CashCardTransfer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebInputException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Same "/cashcards" contract as "CashCardController" (status codes, ETags, JSON shapes, keyset cursors, bulk endpoints
+// and transfers), written as a chain of reactive operators - the handler returns at once and the response is written
+// when the database answers.
+// Not ported: the change stream ("/changes"). Its feed ("CashCardChangeFeed") is built on Spring MVC's "SseEmitter",
+// and this application has no feed for its writes to publish to.
+@RestController
+@RequestMapping("/cashcards")
+class ReactiveCashCardController {
+    private static final int MAX_SLICE_SIZE = 2000;
+    private static final String SELECT_SUMMARY =
+            "SELECT card_count, total, min_amount, max_amount FROM cash_card_summary WHERE owner = :owner";
+    private static final String LOCK_BOTH =
+            "SELECT id, amount FROM cash_card WHERE id IN (:low, :high) AND owner = :owner ORDER BY id FOR UPDATE";
+    private static final String MOVE = "UPDATE cash_card SET amount = amount + :delta, version = version + 1 WHERE id = :id";
+    // Run as driver-level batches, so these use the driver's own placeholders
+    private static final String INSERT = "INSERT INTO cash_card (amount, owner) VALUES ($1, $2)";
+    private static final String UPDATE =
+            "UPDATE cash_card SET amount = $1, version = version + 1 WHERE id = $2 AND owner = $3";
+
+    private final ReactiveCashCardRepository cashCardRepository;
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final ObjectMapper objectMapper;
+    private final int batchChunkSize;
+
+    private ReactiveCashCardController(ReactiveCashCardRepository cashCardRepository, DatabaseClient databaseClient,
+                                       TransactionalOperator transactionalOperator, ObjectMapper objectMapper,
+                                       @Value("${cashcard.batch.chunk-size:500}") int batchChunkSize) {
+        this.cashCardRepository = cashCardRepository;
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+        this.objectMapper = objectMapper;
+        this.batchChunkSize = batchChunkSize;
+    }
+
+    // A matching "If-None-Match" is answered with "304 NOT MODIFIED" by WebFlux, as in Spring MVC
+    @GetMapping("/{requestedId}")
+    private Mono<ResponseEntity<CashCard>> findById(@PathVariable Long requestedId, Principal principal) {
+        return cashCardRepository.findByIdAndOwner(requestedId, principal.getName())
+                .map(cashCard -> ResponseEntity.ok().eTag(CashCardETag.of(cashCard.version())).body(cashCard))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping
+    private Mono<ResponseEntity<Void>> createCashCard(@RequestBody CashCard newCashCardRequest, UriComponentsBuilder ucb,
+                                                      Principal principal) {
+        return cashCardRepository.save(new CashCard(null, newCashCardRequest.amount(), principal.getName()))
+                .map(saved -> {
+                    URI location = ucb.path("cashcards/{id}").buildAndExpand(saved.id()).toUri();
+                    return ResponseEntity.created(location).eTag(CashCardETag.of(saved.version())).build();
+                });
+    }
+
+    // A "Flux" of cards is written as a JSON array, the same body as the MVC "List"
+    @GetMapping
+    private Flux<CashCard> findAll(Pageable pageable, Principal principal) {
+        return cashCardRepository.findByOwner(principal.getName(), PageRequest.of(
+                pageable.getPageNumber(),
+                pageable.getPageSize(),
+                pageable.getSortOr(Sort.by(Sort.Direction.ASC, "amount"))));
+    }
+
+    @GetMapping("/summary")
+    private Mono<CashCardSummary> findSummary(Principal principal) {
+        return databaseClient.sql(SELECT_SUMMARY)
+                .bind("owner", principal.getName())
+                .map(row -> new CashCardSummary(row.get(0, Long.class), row.get(1, Long.class),
+                        row.get(2, Long.class), row.get(3, Long.class)))
+                .one()
+                .defaultIfEmpty(new CashCardSummary(0, 0, null, null));
+    }
+
+    // WebFlux writes each card as its own line as it arrives from the database, with backpressure -
+    // no "StreamingResponseBody" or flushing by hand
+    @GetMapping(path = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    private Flux<CashCard> exportCashCards(Principal principal) {
+        return cashCardRepository.findByOwnerOrderByAmountAscIdAsc(principal.getName());
+    }
+
+    @GetMapping(params = "after")
+    private Mono<ResponseEntity<CashCardSlice>> findAllAfter(@RequestParam String after,
+                                                             @RequestParam(defaultValue = "20") int size,
+                                                             Principal principal) {
+        if (size < 1 || size > MAX_SLICE_SIZE) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        Flux<CashCard> rows;
+        if (after.isEmpty()) {
+            rows = cashCardRepository.findFirstSliceByOwner(principal.getName(), size + 1);
+        } else {
+            CashCardCursor cursor;
+            try {
+                cursor = CashCardCursor.decode(after);
+            } catch (IllegalArgumentException e) {
+                return Mono.just(ResponseEntity.badRequest().build());
+            }
+            rows = cashCardRepository.findSliceByOwnerAfter(principal.getName(), cursor.amount(), cursor.id(), size + 1);
+        }
+        // One row more than asked for tells whether there is a next slice
+        return rows.collectList().map(content -> {
+            if (content.size() <= size) {
+                return ResponseEntity.ok(new CashCardSlice(content, null));
+            }
+            List<CashCard> slice = content.subList(0, size);
+            return ResponseEntity.ok(new CashCardSlice(slice, CashCardCursor.of(slice.get(size - 1)).encode()));
+        });
+    }
+
+    @PutMapping("/{requestedId}")
+    private Mono<ResponseEntity<Void>> putCashCard(@PathVariable Long requestedId, @RequestBody CashCard cashCardUpdate,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                   Principal principal) {
+        String owner = principal.getName();
+        if (ifMatch == null || ifMatch.equals("*")) {
+            return cashCardRepository.updateAmount(requestedId, owner, cashCardUpdate.amount())
+                    .map(updated -> updated ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build());
+        }
+
+        Long expectedVersion = CashCardETag.versionOf(ifMatch);
+        Mono<Boolean> updated = expectedVersion == null
+                ? Mono.just(false)
+                : cashCardRepository.updateAmountIfVersion(requestedId, owner, cashCardUpdate.amount(), expectedVersion);
+        return updated.flatMap(done -> done
+                ? Mono.just(ResponseEntity.noContent().eTag(CashCardETag.of(expectedVersion + 1)).build())
+                // Only a failed conditional update needs a second query, to tell "not found" apart from "changed by someone else"
+                : cashCardRepository.existsByIdAndOwner(requestedId, owner)
+                        .map(exists -> exists
+                                ? ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build()
+                                : ResponseEntity.notFound().build()));
+    }
+
+    // Same checks and status codes as the MVC transfer: both rows locked in id order, checked and moved in one transaction.
+    // There are no in-process lock stripes in front of it - transfers on the same card queue on its row lock.
+    @PostMapping("/transfers")
+    private Mono<ResponseEntity<Void>> transfer(@RequestBody CashCardTransfer transfer, Principal principal) {
+        if (transfer.from() == null || transfer.to() == null || transfer.from().equals(transfer.to()) || transfer.amount() <= 0) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        long fromId = transfer.from();
+        long toId = transfer.to();
+        long amount = transfer.amount();
+        Mono<HttpStatus> outcome = databaseClient.sql(LOCK_BOTH)
+                .bind("low", Math.min(fromId, toId))
+                .bind("high", Math.max(fromId, toId))
+                .bind("owner", principal.getName())
+                .map(row -> new long[]{row.get(0, Long.class), row.get(1, Long.class)})
+                .all()
+                .collectList()
+                .flatMap(rows -> {
+                    // Nothing has been written yet, returning simply commits the row locks away
+                    if (rows.size() < 2) {
+                        return Mono.just(HttpStatus.NOT_FOUND);
+                    }
+                    long fromBalance = rows.get(0)[0] == fromId ? rows.get(0)[1] : rows.get(1)[1];
+                    if (fromBalance < amount) {
+                        return Mono.just(HttpStatus.CONFLICT);
+                    }
+                    return move(fromId, -amount).then(move(toId, amount)).thenReturn(HttpStatus.NO_CONTENT);
+                })
+                .as(transactionalOperator::transactional);
+        return outcome.map(status -> ResponseEntity.status(status).build());
+    }
+
+    private Mono<Long> move(long id, long delta) {
+        return databaseClient.sql(MOVE).bind("delta", delta).bind("id", id).fetch().rowsUpdated();
+    }
+
+    // Bulk create - the same body formats (JSON array or NDJSON), chunking and per-item results as the MVC endpoint.
+    // WebFlux hands the items over one by one as they are parsed, and encodes the results as they come out of the chunks.
+    @PostMapping(path = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    private Flux<CashCardBatchResult> createCashCards(@RequestBody Flux<JsonNode> body, Principal principal) {
+        String owner = principal.getName();
+        return batch(body, chunk -> databaseClient.inConnectionMany(connection -> {
+            Statement insert = connection.createStatement(INSERT).returnGeneratedValues("id");
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0) {
+                    insert.add();
+                }
+                insert.bind(0, chunk.get(i).cashCard().amount()).bind(1, owner);
+            }
+            return Flux.from(insert.execute()).concatMap(result -> result.map((row, metadata) -> row.get(0, Long.class)));
+        }).index((i, id) -> new CashCardBatchResult(chunk.get(i.intValue()).index(), id, HttpStatus.CREATED.value())));
+    }
+
+    // Bulk update - per item 204, 404 (not found or someone else's) or 400 (no "id" or "amount"), as in the MVC endpoint
+    @PutMapping(path = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    private Flux<CashCardBatchResult> putCashCards(@RequestBody Flux<JsonNode> body, Principal principal) {
+        String owner = principal.getName();
+        return batch(body, chunk -> {
+            List<CashCardBatchResult> rejected = new ArrayList<>();
+            List<IndexedCashCard> updates = new ArrayList<>(chunk.size());
+            for (IndexedCashCard item : chunk) {
+                if (item.cashCard().id() == null) {
+                    rejected.add(new CashCardBatchResult(item.index(), null, HttpStatus.BAD_REQUEST.value()));
+                } else {
+                    updates.add(item);
+                }
+            }
+            if (updates.isEmpty()) {
+                return Flux.fromIterable(rejected);
+            }
+            Flux<CashCardBatchResult> updated = databaseClient.inConnectionMany(connection -> {
+                Statement update = connection.createStatement(UPDATE);
+                for (int i = 0; i < updates.size(); i++) {
+                    if (i > 0) {
+                        update.add();
+                    }
+                    CashCard cashCard = updates.get(i).cashCard();
+                    update.bind(0, cashCard.amount()).bind(1, cashCard.id()).bind(2, owner);
+                }
+                return Flux.from(update.execute()).concatMap(Result::getRowsUpdated);
+            }).index((i, rows) -> {
+                IndexedCashCard item = updates.get(i.intValue());
+                HttpStatus status = rows > 0 ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND;
+                return new CashCardBatchResult(item.index(), item.cashCard().id(), status.value());
+            });
+            return Flux.concat(Flux.fromIterable(rejected), updated);
+        });
+    }
+
+    // "cashCard" is null for an item that is well-formed JSON but not a valid "CashCard"
+    private record IndexedCashCard(int index, CashCard cashCard) {
+    }
+
+    private record ChunkResults(List<CashCardBatchResult> results, boolean written) {
+    }
+
+    // Writes the valid items of one chunk, with a result for each
+    private interface ChunkWriter {
+        Flux<CashCardBatchResult> write(List<IndexedCashCard> chunk);
+    }
+
+    // The MVC endpoint's rules, as operators: invalid items get 400 on their own, each chunk is written in its own
+    // transaction, and a chunk that cannot be written gets 500 for its items and stops the batch - nothing after it is
+    // read. A malformed body gets 400 at the item where it breaks, after the chunks before it were written.
+    private Flux<CashCardBatchResult> batch(Flux<JsonNode> body, ChunkWriter writer) {
+        AtomicInteger next = new AtomicInteger();
+        return body
+                .map(item -> {
+                    int index = next.getAndIncrement();
+                    try {
+                        return new IndexedCashCard(index, objectMapper.treeToValue(item, CashCard.class));
+                    } catch (JsonProcessingException e) {
+                        return new IndexedCashCard(index, null);
+                    }
+                })
+                // WebFlux reports a body it cannot parse as "ServerWebInputException"
+                .onErrorResume(ServerWebInputException.class, e -> Mono.just(new IndexedCashCard(next.get(), null)))
+                .buffer(batchChunkSize)
+                .concatMap(chunk -> writeChunk(chunk, writer))
+                .takeUntil(chunk -> !chunk.written())
+                .concatMapIterable(ChunkResults::results);
+    }
+
+    private Mono<ChunkResults> writeChunk(List<IndexedCashCard> chunk, ChunkWriter writer) {
+        List<CashCardBatchResult> rejected = new ArrayList<>();
+        List<IndexedCashCard> valid = new ArrayList<>(chunk.size());
+        for (IndexedCashCard item : chunk) {
+            if (item.cashCard() == null) {
+                rejected.add(new CashCardBatchResult(item.index(), null, HttpStatus.BAD_REQUEST.value()));
+            } else {
+                valid.add(item);
+            }
+        }
+        Mono<List<CashCardBatchResult>> written = valid.isEmpty()
+                ? Mono.just(List.of())
+                : writer.write(valid).collectList().as(transactionalOperator::transactional);
+        return written
+                .map(results -> new ChunkResults(inRequestOrder(rejected, results), true))
+                .onErrorResume(e -> Mono.just(new ChunkResults(inRequestOrder(rejected, valid.stream()
+                        .map(item -> new CashCardBatchResult(item.index(), item.cashCard().id(),
+                                HttpStatus.INTERNAL_SERVER_ERROR.value()))
+                        .toList()), false)));
+    }
+
+    private static List<CashCardBatchResult> inRequestOrder(List<CashCardBatchResult> rejected, List<CashCardBatchResult> results) {
+        List<CashCardBatchResult> all = new ArrayList<>(rejected.size() + results.size());
+        all.addAll(rejected);
+        all.addAll(results);
+        all.sort(Comparator.comparingInt(CashCardBatchResult::index));
+        return all;
+    }
+}
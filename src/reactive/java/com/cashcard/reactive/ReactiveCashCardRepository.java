@@ -0,0 +1,43 @@
+package com.cashcard.reactive;
+
+import com.cashcard.CashCard;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Non-blocking counterpart of "CashCardRepository" - the same queries over R2DBC, answering with "Mono"/"Flux"
+// instead of blocking the caller. Works on the same "cash_card" table and the same "CashCard" record.
+interface ReactiveCashCardRepository extends ReactiveCrudRepository<CashCard, Long> {
+
+    Mono<CashCard> findByIdAndOwner(Long id, String owner);
+
+    Mono<Boolean> existsByIdAndOwner(Long id, String owner);
+
+    // Applies the page, size and sort as LIMIT/OFFSET and ORDER BY - no count query
+    Flux<CashCard> findByOwner(String owner, Pageable pageable);
+
+    // Streams every card of the owner in (amount, id) order, the order of the (owner, amount, id) index
+    Flux<CashCard> findByOwnerOrderByAmountAscIdAsc(String owner);
+
+    @Modifying
+    @Query("UPDATE cash_card SET amount = :amount, version = version + 1 WHERE id = :id AND owner = :owner")
+    Mono<Boolean> updateAmount(Long id, String owner, long amount);
+
+    @Modifying
+    @Query("""
+            UPDATE cash_card SET amount = :amount, version = version + 1
+            WHERE id = :id AND owner = :owner AND version = :version""")
+    Mono<Boolean> updateAmountIfVersion(Long id, String owner, long amount, long version);
+
+    @Query("SELECT * FROM cash_card WHERE owner = :owner ORDER BY amount, id LIMIT :limit")
+    Flux<CashCard> findFirstSliceByOwner(String owner, int limit);
+
+    @Query("""
+            SELECT * FROM cash_card
+            WHERE owner = :owner AND amount >= :amount AND (amount > :amount OR id > :id)
+            ORDER BY amount, id LIMIT :limit""")
+    Flux<CashCard> findSliceByOwnerAfter(String owner, long amount, Long id, int limit);
+}
@@ -0,0 +1,98 @@
+package com.cashcard.reactive;
+
+import com.cashcard.CachingAuthenticationProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.reactive.EndpointRequest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManagerAdapter;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+
+import java.time.Clock;
+import java.time.Duration;
+
+// WebFlux counterpart of "SecurityConfig" - the same rules, users and credential cache, as a "SecurityWebFilterChain"
+@Configuration
+@EnableWebFluxSecurity
+class ReactiveSecurityConfig {
+
+    @Bean
+    SecurityWebFilterChain filterChain(ServerHttpSecurity http, ReactiveAuthenticationManager authenticationManager) {
+        // "cashcards/" endpoints need an HTTP Basic authenticated "CARD-OWNER", health and Prometheus are open,
+        // metrics are for operators ("ADMIN") and anything else is denied - the same rules as "SecurityConfig"
+        // Do not require CSRF security
+        http
+                .authorizeExchange(exchange -> exchange
+                        .pathMatchers("/cashcards/**")
+                        .hasRole("CARD-OWNER")
+                        .matchers(EndpointRequest.to("health", "prometheus"))
+                        .permitAll()
+                        .matchers(EndpointRequest.to("metrics"))
+                        .hasRole("ADMIN")
+                        .anyExchange()
+                        .denyAll())
+                .authenticationManager(authenticationManager)
+                .httpBasic(Customizer.withDefaults())
+                .csrf(ServerHttpSecurity.CsrfSpec::disable);
+
+        return http.build();
+    }
+
+    // The same cache of successful logins as the MVC application, in front of the same BCrypt check.
+    // The adapter runs the (blocking, CPU-heavy) check on Reactor's bounded elastic scheduler, off the event loop.
+    @Bean
+    ReactiveAuthenticationManager authenticationManager(
+            UserDetailsService userDetailsService,
+            PasswordEncoder passwordEncoder,
+            MeterRegistry meterRegistry,
+            @Value("${cashcard.security.credential-cache.max-size:10000}") int maxSize,
+            @Value("${cashcard.security.credential-cache.ttl:5m}") Duration ttl) {
+        DaoAuthenticationProvider passwordCheck = new DaoAuthenticationProvider();
+        passwordCheck.setUserDetailsService(userDetailsService);
+        passwordCheck.setPasswordEncoder(passwordEncoder);
+        CachingAuthenticationProvider cachingProvider = new CachingAuthenticationProvider(
+                passwordCheck, userDetailsService, maxSize, ttl, meterRegistry, Clock.systemUTC());
+        return new ReactiveAuthenticationManagerAdapter(new ProviderManager(cachingProvider));
+    }
+
+    @Bean
+    PasswordEncoder passwordEncoder() {
+        return new BCryptPasswordEncoder();
+    }
+
+    @Bean
+    UserDetailsService testOnlyUsers(PasswordEncoder passwordEncoder) {
+        // Same users as "SecurityConfig": "wilson" owns cards, "hank-owns-no-cards" does not, "olga-operator" is an operator
+        User.UserBuilder users = User.builder();
+        UserDetails wilson = users
+                .username("wilson")
+                .password(passwordEncoder.encode("abc123"))
+                .roles("CARD-OWNER")
+                .build();
+        UserDetails hankOwnsNoCards = users
+                .username("hank-owns-no-cards")
+                .password(passwordEncoder.encode("qrs456"))
+                .roles("NON-OWNER")
+                .build();
+        UserDetails operator = users
+                .username("olga-operator")
+                .password(passwordEncoder.encode("xyz789"))
+                .roles("ADMIN")
+                .build();
+
+        return new InMemoryUserDetailsManager(wilson, hankOwnsNoCards, operator);
+    }
+}
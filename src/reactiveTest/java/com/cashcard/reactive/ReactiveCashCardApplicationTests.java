@@ -0,0 +1,285 @@
+package com.cashcard.reactive;
+
+import com.cashcard.CashCard;
+import com.cashcard.CashCardTransfer;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import net.minidev.json.JSONArray;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The reactive application has to honour the same "/cashcards" contract as the MVC one -
+// these mirror the matching tests in "CashCardApplicationTests", sent through a real Netty server
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ReactiveCashCardApplicationTests {
+	@Autowired
+	WebTestClient webTestClient;
+
+	private WebTestClient asWilson() {
+		return webTestClient.mutate()
+				.defaultHeaders(headers -> headers.setBasicAuth("wilson", "abc123"))
+				.build();
+	}
+
+	@Test
+	void shouldReturnACashCardWhenDataIsSaved() {
+		asWilson().get().uri("/cashcards/99")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(HttpHeaders.ETAG, "\"0\"")
+				.expectBody()
+				.jsonPath("$.id").isEqualTo(99)
+				.jsonPath("$.amount").isEqualTo(123.45);
+	}
+
+	@Test
+	void shouldNotReturnACashCardWithAnUnknownId() {
+		asWilson().get().uri("/cashcards/1000")
+				.exchange()
+				.expectStatus().isNotFound()
+				.expectBody().isEmpty();
+	}
+
+	@Test
+	void shouldNotReturnACashCardToAUserThatIsNotACardOwner() {
+		webTestClient.get().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("hank-owns-no-cards", "qrs456"))
+				.exchange()
+				.expectStatus().isForbidden();
+		webTestClient.get().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("wilson", "BAD-PASSWORD"))
+				.exchange()
+				.expectStatus().isUnauthorized();
+	}
+
+	@Test
+	void shouldDenyWhatNoRuleAllowsAsTheMvcApplicationDoes() {
+		webTestClient.get().uri("/actuator/metrics")
+				.headers(headers -> headers.setBasicAuth("olga-operator", "xyz789"))
+				.exchange()
+				.expectStatus().isOk();
+		asWilson().get().uri("/actuator/metrics")
+				.exchange()
+				.expectStatus().isForbidden();
+		asWilson().get().uri("/somewhere-else")
+				.exchange()
+				.expectStatus().isForbidden();
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldCreateANewCashCard() {
+		URI location = asWilson().post().uri("/cashcards")
+				.bodyValue(new CashCard(null, 25000, null))
+				.exchange()
+				.expectStatus().isCreated()
+				.returnResult(Void.class)
+				.getResponseHeaders().getLocation();
+
+		asWilson().get().uri(location)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.id").isNotEmpty()
+				.jsonPath("$.amount").isEqualTo(250.0)
+				.jsonPath("$.owner").isEqualTo("wilson");
+	}
+
+	@Test
+	void shouldReturnASortedPageOfCashCardsWithNoParametersAndUseDefaultValues() {
+		asWilson().get().uri("/cashcards")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(3)
+				.jsonPath("$[*].amount").<List<Double>>value(amounts -> assertThat(amounts).containsExactly(1.00, 123.45, 150.00));
+	}
+
+	@Test
+	void shouldWalkAllCashCardsUsingKeysetSlices() {
+		// Cursors have the same format as in the MVC application
+		String body = asWilson().get().uri("/cashcards?after=&size=2")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody(String.class)
+				.returnResult()
+				.getResponseBody();
+		DocumentContext documentContext = JsonPath.parse(body);
+		JSONArray amounts = documentContext.read("$.content[*].amount");
+		assertThat(amounts).containsExactly(1.00, 123.45);
+		String next = documentContext.read("$.next");
+		assertThat(next).isNotNull();
+
+		asWilson().get().uri("/cashcards?after={next}&size=2", next)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.content[*].amount").<List<Double>>value(remaining -> assertThat(remaining).containsExactly(150.00))
+				.jsonPath("$.next").doesNotExist();
+
+		asWilson().get().uri("/cashcards?after=not-a-cursor")
+				.exchange()
+				.expectStatus().isBadRequest();
+	}
+
+	@Test
+	void shouldExportTheOwnersCashCardsAsNdjson() {
+		String body = asWilson().get().uri("/cashcards/export")
+				.accept(MediaType.APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody(String.class)
+				.returnResult()
+				.getResponseBody();
+		assertThat(body.lines()).hasSize(3).first().asString().contains("\"id\":100");
+	}
+
+	@Test
+	void shouldReturnASummaryOfTheOwnersCashCards() {
+		asWilson().get().uri("/cashcards/summary")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.count").isEqualTo(3)
+				.jsonPath("$.total").isEqualTo(274.45)
+				.jsonPath("$.min").isEqualTo(1.0)
+				.jsonPath("$.max").isEqualTo(150.0);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldUpdateAnExistingCashCardOnlyIfTheETagStillMatches() {
+		asWilson().put().uri("/cashcards/99")
+				.header(HttpHeaders.IF_MATCH, "\"0\"")
+				.bodyValue(new CashCard(null, 1999, null))
+				.exchange()
+				.expectStatus().isNoContent()
+				.expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+
+		// The card has moved on to version 1 - a second write based on version 0 is refused, as is a weak tag
+		asWilson().put().uri("/cashcards/99")
+				.header(HttpHeaders.IF_MATCH, "\"0\"")
+				.bodyValue(new CashCard(null, 2999, null))
+				.exchange()
+				.expectStatus().isEqualTo(412);
+		asWilson().put().uri("/cashcards/99")
+				.header(HttpHeaders.IF_MATCH, "W/\"1\"")
+				.bodyValue(new CashCard(null, 2999, null))
+				.exchange()
+				.expectStatus().isEqualTo(412);
+
+		asWilson().put().uri("/cashcards/102")
+				.bodyValue(new CashCard(null, 2999, null))
+				.exchange()
+				.expectStatus().isNotFound();
+
+		asWilson().get().uri("/cashcards/99")
+				.exchange()
+				.expectBody()
+				.jsonPath("$.amount").isEqualTo(19.99);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldCreateCashCardsInBulk() {
+		// The second item has no "amount" and is rejected on its own, the others are still created
+		String body = asWilson().post().uri("/cashcards/batch")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("""
+						[{"amount": 10.00}, {}, {"amount": 20.00}]
+						""")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody(String.class)
+				.returnResult()
+				.getResponseBody();
+		DocumentContext documentContext = JsonPath.parse(body);
+		JSONArray statuses = documentContext.read("$[*].status");
+		assertThat(statuses).containsExactly(201, 400, 201);
+		Number id = documentContext.read("$[2].id");
+
+		asWilson().get().uri("/cashcards/{id}", id)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.amount").isEqualTo(20.00);
+
+		// A body that breaks off: what came before it is written, the item where it breaks gets 400
+		asWilson().post().uri("/cashcards/batch")
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.bodyValue("""
+						{"amount": 1.00}
+						{"amount": 
+						""")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$[*].status").<List<Integer>>value(results -> assertThat(results).containsExactly(201, 400));
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldUpdateCashCardsInBulkFromNdjson() {
+		// One card per line - the last one is Brenda's and must not be touched, the one before it has no id
+		asWilson().put().uri("/cashcards/batch")
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.bodyValue("""
+						{"id": 99, "amount": 1.23}
+						{"id": 100, "amount": 4.56}
+						{"amount": 0.01}
+						{"id": 102, "amount": 7.89}
+						""")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$[*].status").<List<Integer>>value(statuses -> assertThat(statuses).containsExactly(204, 204, 400, 404));
+
+		asWilson().get().uri("/cashcards/100")
+				.exchange()
+				.expectBody()
+				.jsonPath("$.amount").isEqualTo(4.56);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldTransferBetweenTwoOfTheOwnersCashCards() {
+		// 150.00 -> 1.00: 50.00 moves, the owner's total stays the same
+		asWilson().post().uri("/cashcards/transfers")
+				.bodyValue(new CashCardTransfer(101L, 100L, 5000))
+				.exchange()
+				.expectStatus().isNoContent();
+		asWilson().get().uri("/cashcards/summary")
+				.exchange()
+				.expectBody()
+				.jsonPath("$.total").isEqualTo(274.45);
+		asWilson().get().uri("/cashcards/100")
+				.exchange()
+				.expectBody()
+				.jsonPath("$.amount").isEqualTo(51.00);
+
+		// More than the 100.00 left on card 101
+		asWilson().post().uri("/cashcards/transfers")
+				.bodyValue(new CashCardTransfer(101L, 100L, 10001))
+				.exchange()
+				.expectStatus().isEqualTo(409);
+		// Card 102 is brenda's
+		asWilson().post().uri("/cashcards/transfers")
+				.bodyValue(new CashCardTransfer(101L, 102L, 100))
+				.exchange()
+				.expectStatus().isNotFound();
+		asWilson().post().uri("/cashcards/transfers")
+				.bodyValue(new CashCardTransfer(101L, 101L, 100))
+				.exchange()
+				.expectStatus().isBadRequest();
+	}
+}
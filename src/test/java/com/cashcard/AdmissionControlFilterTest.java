@@ -0,0 +1,108 @@
+package com.cashcard;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Plain unit test - drives the filter with mock requests, one owner at a time
+class AdmissionControlFilterTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void shouldRateLimitEachOwnerPerEndpoint() throws Exception {
+        AdmissionControlFilter filter = filter(10, 10, List.of(
+                new AdmissionControlProperties.Endpoint("export", "GET", "/cashcards/export", 1, 1)));
+
+        assertThat(send(filter, "wilson", "/cashcards/export").getStatus()).isEqualTo(200);
+        MockHttpServletResponse limited = send(filter, "wilson", "/cashcards/export");
+        assertThat(limited.getStatus()).isEqualTo(429);
+        assertThat(limited.getHeader("Retry-After")).isEqualTo("1");
+
+        // Other endpoints, and other owners, have buckets of their own
+        assertThat(send(filter, "wilson", "/cashcards/99").getStatus()).isEqualTo(200);
+        assertThat(send(filter, "sarah", "/cashcards/export").getStatus()).isEqualTo(200);
+
+        assertThat(meterRegistry.get("cashcard.admission.rejected")
+                .tags("reason", "rate-limited", "endpoint", "export").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldShedRequestsBeyondTheConcurrencyLimitAndQueue() throws Exception {
+        AdmissionControlFilter filter = filter(1, 0, List.of());
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+
+        // Hold the only slot...
+        CompletableFuture<MockHttpServletResponse> slow = CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(filter, "wilson", "/cashcards/99", (request, response) -> {
+                    running.countDown();
+                    try {
+                        finish.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(running.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // ...so with no room to queue, the next request is shed at once
+        MockHttpServletResponse shed = send(filter, "sarah", "/cashcards/99");
+        assertThat(shed.getStatus()).isEqualTo(503);
+        assertThat(shed.getHeader("Retry-After")).isEqualTo("1");
+        assertThat(meterRegistry.get("cashcard.admission.rejected").tags("reason", "overloaded").counter().count())
+                .isEqualTo(1);
+
+        finish.countDown();
+        assertThat(slow.get(10, TimeUnit.SECONDS).getStatus()).isEqualTo(200);
+        assertThat(send(filter, "sarah", "/cashcards/99").getStatus()).isEqualTo(200);
+    }
+
+    private AdmissionControlFilter filter(int maxConcurrent, int maxQueued, List<AdmissionControlProperties.Endpoint> endpoints) {
+        AdmissionControlProperties properties = new AdmissionControlProperties(true, maxConcurrent, maxQueued,
+                Duration.ofMillis(50), 1000, new AdmissionControlProperties.Limit(100, 100), endpoints);
+        return new AdmissionControlFilter(properties, meterRegistry, System::nanoTime);
+    }
+
+    private static MockHttpServletResponse send(AdmissionControlFilter filter, String owner, String path) throws Exception {
+        return send(filter, owner, path, (request, response) -> {
+        });
+    }
+
+    private static MockHttpServletResponse send(AdmissionControlFilter filter, String owner, String path, FilterChain chain)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        SecurityContextHolder.getContext().setAuthentication(UsernamePasswordAuthenticationToken.authenticated(
+                owner, null, AuthorityUtils.createAuthorityList("ROLE_CARD-OWNER")));
+        try {
+            filter.doFilter(request, response, chain);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+        return response;
+    }
+}
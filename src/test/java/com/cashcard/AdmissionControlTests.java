@@ -0,0 +1,48 @@
+package com.cashcard;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The admission control filter in the real security chain - a limit low enough to hit with a handful of requests
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"cashcard.admission.default-limit.rate=0.01",
+		"cashcard.admission.default-limit.burst=2"})
+class AdmissionControlTests {
+	@Autowired
+	TestRestTemplate restTemplate;
+
+	@Test
+	void shouldRateLimitAnOwnerOnceItsBurstIsUsedUp() {
+		for (int i = 0; i < 2; i++) {
+			assertThat(restTemplate
+					.withBasicAuth("wilson", "abc123")
+					.getForEntity("/cashcards/99", String.class)
+					.getStatusCode()).isEqualTo(HttpStatus.OK);
+		}
+
+		ResponseEntity<String> limited = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		assertThat(limited.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+		// One request per 100 seconds - the next one is allowed in 100 seconds at most
+		assertThat(Long.parseLong(limited.getHeaders().getFirst(HttpHeaders.RETRY_AFTER))).isBetween(1L, 100L);
+
+		// Runs after Basic auth: bad credentials are still answered as such, and do not use up anybody's bucket
+		assertThat(restTemplate
+				.withBasicAuth("wilson", "BAD-PASSWORD")
+				.getForEntity("/cashcards/99", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+		// Limits are per owner - and authorization still comes after them
+		assertThat(restTemplate
+				.withBasicAuth("hank-owns-no-cards", "qrs456")
+				.getForEntity("/cashcards/99", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+	}
+}
@@ -0,0 +1,116 @@
+package com.cashcard;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Plain unit test - no Spring context needed to exercise the cache in front of the password check
+class CachingAuthenticationProviderTest {
+    // Lowest BCrypt strength keeps the test fast, the cache behaves the same at any strength
+    private final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder(4);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MutableClock clock;
+    private InMemoryUserDetailsManager users;
+    private CachingAuthenticationProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock();
+        users = new InMemoryUserDetailsManager(user("abc123", "CARD-OWNER"));
+
+        DaoAuthenticationProvider passwordCheck = new DaoAuthenticationProvider();
+        passwordCheck.setUserDetailsService(users);
+        passwordCheck.setPasswordEncoder(passwordEncoder);
+        provider = new CachingAuthenticationProvider(passwordCheck, users, 100, Duration.ofMinutes(5), meterRegistry, clock);
+    }
+
+    @Test
+    void shouldAnswerRepeatLoginsFromTheCache() {
+        assertThat(provider.authenticate(login("abc123")).isAuthenticated()).isTrue();
+        Authentication second = provider.authenticate(login("abc123"));
+
+        assertThat(second.isAuthenticated()).isTrue();
+        assertThat(second.getAuthorities()).extracting("authority").containsExactly("ROLE_CARD-OWNER");
+        assertThat(count("hit")).isEqualTo(1);
+        assertThat(count("miss")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotAcceptAWrongPasswordForACachedUser() {
+        provider.authenticate(login("abc123"));
+
+        assertThatThrownBy(() -> provider.authenticate(login("BAD-PASSWORD")))
+                .isInstanceOf(BadCredentialsException.class);
+    }
+
+    @Test
+    void shouldKeepTheCachedCheckWhenSomebodyTriesAWrongPassword() {
+        provider.authenticate(login("abc123"));
+        assertThatThrownBy(() -> provider.authenticate(login("BAD-PASSWORD")))
+                .isInstanceOf(BadCredentialsException.class);
+
+        // The owner's next request is still answered without BCrypt
+        provider.authenticate(login("abc123"));
+
+        assertThat(count("hit")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldStopUsingTheCachedCheckWhenThePasswordChanges() {
+        provider.authenticate(login("abc123"));
+        users.updateUser(user("new-password", "CARD-OWNER"));
+
+        assertThatThrownBy(() -> provider.authenticate(login("abc123")))
+                .isInstanceOf(BadCredentialsException.class);
+        assertThat(provider.authenticate(login("new-password")).isAuthenticated()).isTrue();
+    }
+
+    @Test
+    void shouldPickUpRoleChangesOnACacheHit() {
+        provider.authenticate(login("abc123"));
+        // Same stored hash, different role - still a hit, but with the current authorities
+        String storedHash = users.loadUserByUsername("wilson").getPassword();
+        users.updateUser(User.withUsername("wilson").password(storedHash).roles("NON-OWNER").build());
+
+        Authentication result = provider.authenticate(login("abc123"));
+
+        assertThat(count("hit")).isEqualTo(1);
+        assertThat(result.getAuthorities()).extracting("authority").containsExactly("ROLE_NON-OWNER");
+    }
+
+    @Test
+    void shouldVerifyThePasswordAgainAfterTheEntryExpires() {
+        provider.authenticate(login("abc123"));
+        clock.advance(Duration.ofMinutes(6));
+
+        provider.authenticate(login("abc123"));
+
+        assertThat(count("hit")).isZero();
+        assertThat(count("miss")).isEqualTo(2);
+    }
+
+    private User user(String password, String role) {
+        return (User) User.withUsername("wilson").password(passwordEncoder.encode(password)).roles(role).build();
+    }
+
+    private static UsernamePasswordAuthenticationToken login(String password) {
+        return UsernamePasswordAuthenticationToken.unauthenticated("wilson", password);
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("cashcard.auth.credential.cache").tag("result", result).counter().count();
+    }
+}
@@ -1,5 +1,8 @@
 package com.cashcard;
 
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
 import net.minidev.json.JSONArray;
@@ -7,13 +10,21 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cache.CacheManager;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 
+import java.io.ByteArrayInputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -27,6 +38,15 @@ class CashCardApplicationTests {
 	@Autowired
 	TestRestTemplate restTemplate;
 
+	@Autowired
+	CacheManager cacheManager;
+
+	@Autowired
+	CashCardRepository cashCardRepository;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
 	@Test
 	void shouldReturnACashCardWhenDataIsSaved() {
 		// Use "restTemplate" to make an HTTP GET request for application endpoint "/cashcards/99"
@@ -53,6 +73,38 @@ class CashCardApplicationTests {
 		assertThat(amount).isEqualTo(123.45);
 	}
 
+	@Test
+	void shouldServeRepeatReadsOfACashCardFromTheCache() {
+		Cache<?, ?> cache = (Cache<?, ?>) cacheManager.getCache(CashCardCacheConfig.CASH_CARDS).getNativeCache();
+		long hitsBefore = cache.stats().hitCount();
+
+		for (int i = 0; i < 2; i++) {
+			ResponseEntity<String> response = restTemplate
+					.withBasicAuth("wilson", "abc123")
+					.getForEntity("/cashcards/99", String.class);
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		}
+
+		// The second read at the latest is answered without going to the database
+		assertThat(cache.stats().hitCount()).isGreaterThan(hitsBefore);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldNotServeAStaleCachedCardAfterABulkWrite() {
+		CashCard cached = cashCardRepository.findByIdAndOwner(99L, "wilson");
+
+		cashCardRepository.saveAll(List.of(new CashCard(99L, 4242, "wilson", cached.version())));
+		assertThat(cashCardRepository.findByIdAndOwner(99L, "wilson").amount()).isEqualTo(4242);
+
+		cashCardRepository.deleteAllById(List.of(99L));
+		assertThat(cashCardRepository.findByIdAndOwner(99L, "wilson")).isNull();
+
+		cashCardRepository.findByIdAndOwner(100L, "wilson");
+		cashCardRepository.deleteAll(List.of(cashCardRepository.findByIdAndOwner(100L, "wilson")));
+		assertThat(cashCardRepository.findByIdAndOwner(100L, "wilson")).isNull();
+	}
+
 	@Test
 	void shouldNotReturnACashCardWithAnUnknownId() {
 		ResponseEntity<String> response = restTemplate
@@ -68,7 +120,7 @@ class CashCardApplicationTests {
 	@DirtiesContext
 	void shouldCreateANewCashCard() {
 		// Database will create and manage all unique "CashCard.id" values. No need to provide one
-		CashCard newCashCard = new CashCard(null, 250.00, null);
+		CashCard newCashCard = new CashCard(null, 25000, null);
 
 		// Similar to "restTemplate.getForEntity", except "newCashCard" data for new "CashCard" must be provided
 		// Expect a "Void" response body as a CashCard does not need to be returned
@@ -162,6 +214,41 @@ class CashCardApplicationTests {
 		assertThat(amounts).containsExactly(1.00, 123.45, 150.00);
 	}
 
+	@Test
+	void shouldWalkAllCashCardsUsingKeysetSlices() {
+		// An empty "after" cursor starts at the first slice
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/cashcards?after=&size=2", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		JSONArray amounts = documentContext.read("$.content[*].amount");
+		assertThat(amounts).containsExactly(1.00, 123.45);
+		String next = documentContext.read("$.next");
+		assertThat(next).isNotNull();
+
+		// Follow the "next" cursor to the remaining card
+		response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/cashcards?after={next}&size=2", String.class, next);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		documentContext = JsonPath.parse(response.getBody());
+		amounts = documentContext.read("$.content[*].amount");
+		assertThat(amounts).containsExactly(150.00);
+		// Last slice has no "next" cursor
+		assertThat((String) documentContext.read("$.next")).isNull();
+	}
+
+	@Test
+	void shouldRejectAMalformedKeysetCursor() {
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/cashcards?after=not-a-cursor", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
 	@Test
 	void shouldNotReturnACashCardWhenUsingBadCredentials() {
 		ResponseEntity<String> response = restTemplate
@@ -196,7 +283,7 @@ class CashCardApplicationTests {
 	@Test
 	@DirtiesContext
 	void shouldUpdateAnExistingCashCard() {
-		CashCard cashCardUpdate = new CashCard(null, 19.99, null);
+		CashCard cashCardUpdate = new CashCard(null, 1999, null);
 		// Needed for the "exchange()" method below.
 		HttpEntity<CashCard> request = new HttpEntity<>(cashCardUpdate);
 		ResponseEntity<Void> response = restTemplate
@@ -221,7 +308,7 @@ class CashCardApplicationTests {
 
 	@Test
 	void shouldNotUpdateACashCardThatDoesNotExist() {
-		CashCard unknownCashCard = new CashCard(null, 19.99, null);
+		CashCard unknownCashCard = new CashCard(null, 1999, null);
 		HttpEntity<CashCard> request = new HttpEntity<>(unknownCashCard);
 		ResponseEntity<Void> response = restTemplate
 				.withBasicAuth("wilson", "abc123")
@@ -231,7 +318,7 @@ class CashCardApplicationTests {
 
 	@Test
 	void shouldNotUpdateACashCardThatIsOwnedBySomeoneElse() {
-		CashCard brendasCard = new CashCard(null, 333.33, null);
+		CashCard brendasCard = new CashCard(null, 33333, null);
 		HttpEntity<CashCard> request = new HttpEntity<>(brendasCard);
 		ResponseEntity<Void> response = restTemplate
 				.withBasicAuth("wilson", "abc123")
@@ -239,4 +326,277 @@ class CashCardApplicationTests {
 		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
 	}
 
+	@Test
+	@DirtiesContext
+	void shouldCreateCashCardsInBulk() {
+		// The second item has no "amount" and is rejected on its own, the others are still created
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		HttpEntity<String> request = new HttpEntity<>("""
+				[{"amount": 10.00}, {}, {"amount": 20.00}]
+				""", headers);
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange("/cashcards/batch", HttpMethod.POST, request, String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		JSONArray statuses = documentContext.read("$[*].status");
+		assertThat(statuses).containsExactly(201, 400, 201);
+		Number id = documentContext.read("$[2].id");
+
+		// The created cards belong to the authenticated user and can be fetched like any other
+		ResponseEntity<String> getResponse = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/cashcards/" + id, String.class);
+		assertThat(getResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+		Double amount = JsonPath.parse(getResponse.getBody()).read("$.amount");
+		assertThat(amount).isEqualTo(20.00);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldUpdateCashCardsInBulkFromNdjson() {
+		// One card per line - the last one is Brenda's and must not be touched
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_NDJSON);
+		HttpEntity<String> request = new HttpEntity<>("""
+				{"id": 99, "amount": 1.23}
+				{"id": 100, "amount": 4.56}
+				{"id": 102, "amount": 7.89}
+				""", headers);
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange("/cashcards/batch", HttpMethod.PUT, request, String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		JSONArray statuses = JsonPath.parse(response.getBody()).read("$[*].status");
+		assertThat(statuses).containsExactly(204, 204, 404);
+
+		ResponseEntity<String> getResponse = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/cashcards/100", String.class);
+		Double amount = JsonPath.parse(getResponse.getBody()).read("$.amount");
+		assertThat(amount).isEqualTo(4.56);
+	}
+
+	@Test
+	void shouldAnswerAnUnchangedCashCardWithNotModified() {
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		String eTag = response.getHeaders().getETag();
+		assertThat(eTag).isNotNull();
+
+		// Revalidating with the "ETag" just received costs no body
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(eTag);
+		ResponseEntity<String> revalidated = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange("/cashcards/99", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+		assertThat(revalidated.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+		assertThat(revalidated.getBody()).isNull();
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldOnlyUpdateACashCardWhenIfMatchIsCurrent() {
+		String eTag = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/cashcards/99", String.class)
+				.getHeaders().getETag();
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfMatch(eTag);
+		HttpEntity<CashCard> request = new HttpEntity<>(new CashCard(null, 1999, null), headers);
+		ResponseEntity<Void> response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange("/cashcards/99", HttpMethod.PUT, request, Void.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+		assertThat(response.getHeaders().getETag()).isNotEqualTo(eTag);
+
+		// Same "If-Match" again - the card has moved on to a newer version in the meantime
+		response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange("/cashcards/99", HttpMethod.PUT, request, Void.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+		// A card of someone else is still reported as not found, not as a failed precondition
+		response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange("/cashcards/102", HttpMethod.PUT, request, Void.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	void shouldExportAllCashCardsAsNdjson() {
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/cashcards/export", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_NDJSON);
+
+		// One card per line, in the default "amount" order, and only the user's own cards
+		String[] lines = response.getBody().split("\n");
+		assertThat(lines).hasSize(3);
+		assertThat(lines).extracting(line -> JsonPath.parse(line).read("$.amount", Double.class))
+				.containsExactly(1.00, 123.45, 150.00);
+		assertThat(lines).extracting(line -> JsonPath.parse(line).read("$.owner", String.class))
+				.containsOnly("wilson");
+	}
+
+	@Test
+	void shouldReturnASummaryOfTheOwnersCashCards() {
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/cashcards/summary", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		// Only wilson's three cards (1.00, 123.45 and 150.00), not brenda's
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		assertThat(documentContext.read("$.count", Integer.class)).isEqualTo(3);
+		assertThat(documentContext.read("$.total", Double.class)).isEqualTo(274.45);
+		assertThat(documentContext.read("$.min", Double.class)).isEqualTo(1.00);
+		assertThat(documentContext.read("$.max", Double.class)).isEqualTo(150.00);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldKeepTheSummaryInStepWithUpdatesAndReportDrift() {
+		// Raising the smallest card (1.00) above the largest moves both the minimum and the maximum
+		HttpEntity<CashCard> request = new HttpEntity<>(new CashCard(null, 50000, null));
+		restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange("/cashcards/100", HttpMethod.PUT, request, Void.class);
+
+		DocumentContext documentContext = JsonPath.parse(restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForObject("/cashcards/summary", String.class));
+		assertThat(documentContext.read("$.count", Integer.class)).isEqualTo(3);
+		assertThat(documentContext.read("$.total", Double.class)).isEqualTo(773.45);
+		assertThat(documentContext.read("$.min", Double.class)).isEqualTo(123.45);
+		assertThat(documentContext.read("$.max", Double.class)).isEqualTo(500.00);
+		assertThat(cashCardRepository.findSummaryDrift()).isEmpty();
+
+		// A change behind the triggers' back shows up in the consistency check
+		jdbcTemplate.update("UPDATE cash_card_summary SET total = 0 WHERE owner = 'brenda'");
+		assertThat(cashCardRepository.findSummaryDrift())
+				.extracting(CashCardSummaryDrift::owner)
+				.containsExactly("brenda");
+	}
+
+	@Test
+	void shouldLetOnlyOperatorsRunTheSummaryConsistencyCheck() {
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("olga-operator", "xyz789")
+				.getForEntity("/actuator/cashcardsummary", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		assertThat(documentContext.read("$.consistent", Boolean.class)).isTrue();
+		assertThat(documentContext.read("$.drift.length()", Integer.class)).isZero();
+
+		assertThat(restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/actuator/cashcardsummary", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+		// And operators own no cards
+		assertThat(restTemplate
+				.withBasicAuth("olga-operator", "xyz789")
+				.getForEntity("/cashcards/99", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldTransferBetweenTwoOfTheOwnersCashCards() {
+		// 150.00 -> 1.00: 50.00 moves, the owner's total stays the same
+		ResponseEntity<Void> response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.postForEntity("/cashcards/transfers", new CashCardTransfer(101L, 100L, 5000), Void.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+		DocumentContext summary = JsonPath.parse(restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForObject("/cashcards/summary", String.class));
+		assertThat(summary.read("$.total", Double.class)).isEqualTo(274.45);
+		Double amount = JsonPath.parse(restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForObject("/cashcards/100", String.class)).read("$.amount");
+		assertThat(amount).isEqualTo(51.00);
+
+		// More than the 100.00 left on card 101
+		response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.postForEntity("/cashcards/transfers", new CashCardTransfer(101L, 100L, 10001), Void.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+
+		// Card 102 is brenda's
+		response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.postForEntity("/cashcards/transfers", new CashCardTransfer(101L, 102L, 100), Void.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+		response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.postForEntity("/cashcards/transfers", new CashCardTransfer(101L, 101L, 100), Void.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	void shouldReturnACashCardAsCborWhenAsked() throws Exception {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setAccept(List.of(MediaType.APPLICATION_CBOR));
+		ResponseEntity<byte[]> response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange("/cashcards/99", HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_CBOR);
+
+		// Same fields as the JSON, with the amount an exact decimal
+		CashCard cashCard = new CBORMapper().readValue(response.getBody(), CashCard.class);
+		assertThat(cashCard).isEqualTo(new CashCard(99L, 12345, "wilson"));
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldCreateACashCardFromASmileBody() throws Exception {
+		SmileMapper smileMapper = new SmileMapper();
+		MediaType smile = MediaType.valueOf("application/x-jackson-smile");
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(smile);
+		ResponseEntity<Void> createResponse = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange("/cashcards", HttpMethod.POST,
+						new HttpEntity<>(smileMapper.writeValueAsBytes(new CashCard(null, 4250, null)), headers), Void.class);
+		assertThat(createResponse.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+
+		headers = new HttpHeaders();
+		headers.setAccept(List.of(smile));
+		ResponseEntity<byte[]> response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange(createResponse.getHeaders().getLocation(), HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+		assertThat(response.getHeaders().getContentType()).isEqualTo(smile);
+		assertThat(smileMapper.readValue(response.getBody(), CashCard.class).amount()).isEqualTo(4250);
+	}
+
+	@Test
+	void shouldGzipResponsesForClientsThatAcceptIt() throws Exception {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+
+		// Too small to be worth compressing
+		ResponseEntity<byte[]> response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange("/cashcards/99", HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+		assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+
+		// A streamed response has no known size up front, so it is always compressed
+		response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange("/cashcards/export", HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+		assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+		try (GZIPInputStream body = new GZIPInputStream(new ByteArrayInputStream(response.getBody()))) {
+			assertThat(new String(body.readAllBytes(), StandardCharsets.UTF_8).split("\n")).hasSize(3);
+		}
+	}
 }
@@ -0,0 +1,206 @@
+package com.cashcard;
+
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// GET /cashcards/changes, read the way a browser's "EventSource" would - a plain HTTP client reading lines.
+// A short subscriber queue, so that the tests can fill it up.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "cashcard.changes.subscriber-queue=4")
+class CashCardChangeFeedTests {
+
+	@Autowired
+	TestRestTemplate restTemplate;
+
+	@Autowired
+	CashCardChangeFeed changeFeed;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@LocalServerPort
+	int port;
+
+	@Test
+	@DirtiesContext
+	void shouldStreamTheOwnersCardChanges() throws Exception {
+		try (EventStream changes = open(null)) {
+			assertThat(changes.next().get("event")).isEqualTo("ready");
+
+			URI location = restTemplate
+					.withBasicAuth("wilson", "abc123")
+					.postForLocation("/cashcards", new CashCard(null, 25000, null));
+			Map<String, String> created = changes.next();
+			assertThat(created.get("event")).isEqualTo("created");
+			DocumentContext createdCard = JsonPath.parse(created.get("data"));
+			assertThat(location.getPath()).endsWith("/" + createdCard.read("$.id", Long.class));
+			assertThat(createdCard.read("$.amount", Double.class)).isEqualTo(250.00);
+
+			restTemplate
+					.withBasicAuth("wilson", "abc123")
+					.exchange("/cashcards/99", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, 1999, null)), Void.class);
+			Map<String, String> updated = changes.next();
+			assertThat(updated.get("event")).isEqualTo("updated");
+			assertThat(JsonPath.parse(updated.get("data")).read("$.id", Long.class)).isEqualTo(99);
+			assertThat(JsonPath.parse(updated.get("data")).read("$.amount", Double.class)).isEqualTo(19.99);
+
+			// A transfer reports the new balance of both cards
+			restTemplate
+					.withBasicAuth("wilson", "abc123")
+					.postForEntity("/cashcards/transfers", new CashCardTransfer(101L, 100L, 5000), Void.class);
+			assertThat(JsonPath.parse(changes.next().get("data")).read("$.amount", Double.class)).isEqualTo(100.00);
+			assertThat(JsonPath.parse(changes.next().get("data")).read("$.amount", Double.class)).isEqualTo(51.00);
+		}
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldReplayTheChangesMissedSinceTheLastEventId() throws Exception {
+		String lastEventId;
+		try (EventStream changes = open(null)) {
+			lastEventId = changes.next().get("id");
+		}
+
+		// Happens while the client is not connected
+		restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange("/cashcards/99", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, 1999, null)), Void.class);
+
+		try (EventStream changes = open(lastEventId)) {
+			Map<String, String> missed = changes.next();
+			assertThat(missed.get("event")).isEqualTo("updated");
+			assertThat(JsonPath.parse(missed.get("data")).read("$.id", Long.class)).isEqualTo(99);
+		}
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldReplayMoreChangesThanTheSubscriberQueueHolds() throws Exception {
+		String lastEventId;
+		try (EventStream changes = open(null)) {
+			lastEventId = changes.next().get("id");
+		}
+		for (int amount = 1; amount <= 20; amount++) {
+			changeFeed.publish("wilson", CashCardChange.updated(99, amount, null));
+		}
+
+		// A new event right after reconnecting does not count the 20 replayed ones as a backlog - the stream would
+		// otherwise end here, with events missing
+		try (EventStream changes = open(lastEventId)) {
+			changeFeed.publish("wilson", CashCardChange.updated(99, 2100, null));
+			for (int amount = 1; amount <= 20; amount++) {
+				assertThat(JsonPath.parse(changes.next().get("data")).read("$.amount", Double.class)).isEqualTo(amount / 100.0);
+			}
+			assertThat(JsonPath.parse(changes.next().get("data")).read("$.amount", Double.class)).isEqualTo(21.00);
+		}
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldDisconnectASubscriberThatFallsBehind() throws Exception {
+		try (EventStream changes = open(null)) {
+			assertThat(changes.next().get("event")).isEqualTo("ready");
+			double disconnectedBefore = disconnected();
+
+			// Published far faster than they can be written out
+			for (int amount = 0; amount < 10_000; amount++) {
+				changeFeed.publish("wilson", CashCardChange.updated(99, amount, null));
+			}
+
+			assertThat(disconnected()).isEqualTo(disconnectedBefore + 1);
+			assertThat(meterRegistry.get("cashcard.changes.subscribers").gauge().value()).isZero();
+		}
+	}
+
+	@Test
+	void shouldAskClientsToStartOverWhenTheirLastEventIdIsUnknown() throws Exception {
+		try (EventStream changes = open("from-an-earlier-run:42")) {
+			assertThat(changes.next().get("event")).isEqualTo("reset");
+		}
+	}
+
+	@Test
+	void shouldNotStreamChangesToUsersWhoAreNotCardOwners() {
+		assertThat(restTemplate
+				.withBasicAuth("hank-owns-no-cards", "qrs456")
+				.getForEntity("/cashcards/changes", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+	}
+
+	private double disconnected() {
+		return meterRegistry.get("cashcard.changes.disconnected").tag("reason", "slow").counter().count();
+	}
+
+	private EventStream open(String lastEventId) throws Exception {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/cashcards/changes"))
+				.header("Accept", "text/event-stream")
+				.header("Authorization", "Basic " + Base64.getEncoder()
+						.encodeToString("wilson:abc123".getBytes(StandardCharsets.UTF_8)));
+		if (lastEventId != null) {
+			request.header("Last-Event-ID", lastEventId);
+		}
+		HttpClient client = HttpClient.newHttpClient();
+		HttpResponse<Stream<String>> response = client.send(request.build(), HttpResponse.BodyHandlers.ofLines());
+		assertThat(response.statusCode()).isEqualTo(200);
+		return new EventStream(client, response.body());
+	}
+
+	// Reads the stream on a background thread and hands out one event (its fields by name) at a time
+	private static final class EventStream implements AutoCloseable {
+		private final HttpClient client;
+		private final Stream<String> lines;
+		private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+		EventStream(HttpClient client, Stream<String> lines) {
+			this.client = client;
+			this.lines = lines;
+			Thread.ofVirtual().start(() -> lines.forEach(received::add));
+		}
+
+		Map<String, String> next() throws InterruptedException {
+			Map<String, String> event = new HashMap<>();
+			while (true) {
+				String line = received.poll(10, TimeUnit.SECONDS);
+				assertThat(line).as("next line of the event stream").isNotNull();
+				if (line.isEmpty()) {
+					if (!event.isEmpty()) {
+						return event;
+					}
+				} else if (!line.startsWith(":")) {
+					int colon = line.indexOf(':');
+					event.put(line.substring(0, colon), line.substring(colon + 1));
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			lines.close();
+			client.close();
+		}
+	}
+}
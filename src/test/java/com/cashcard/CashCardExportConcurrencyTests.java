@@ -0,0 +1,83 @@
+package com.cashcard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// The JDBC export reads its rows lazily, while the client takes them - changes made meanwhile must not break it
+@SpringBootTest
+@DirtiesContext
+class CashCardExportConcurrencyTests {
+	private static final String OWNER = "export-concurrency";
+
+	@Autowired
+	CashCardRepository cashCardRepository;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	HikariDataSource dataSource;
+
+	@Test
+	void shouldExportEveryCardThatExistedWhenTheExportStarted() throws Exception {
+		// Several fetches' worth, so most rows are still to be read when they are deleted.
+		// Ids clear of data.sql's, which the identity column does not know about.
+		List<Long> ids = new ArrayList<>();
+		List<Object[]> rows = new ArrayList<>();
+		for (long id = 10_000; id < 12_000; id++) {
+			ids.add(id);
+			rows.add(new Object[]{id, id, OWNER});
+		}
+		jdbcTemplate.batchUpdate("INSERT INTO cash_card (id, amount, owner) VALUES (?, ?, ?)", rows);
+
+		List<Long> exported = new ArrayList<>();
+		cashCardRepository.forEachByOwner(OWNER, cashCard -> {
+			if (exported.isEmpty()) {
+				// Another transaction (the export's own connection is read-only) deletes them all and commits
+				CompletableFuture.runAsync(() -> jdbcTemplate.update("DELETE FROM cash_card WHERE owner = ?", OWNER)).join();
+			}
+			exported.add(cashCard.id());
+		});
+
+		assertThat(exported).containsExactlyElementsOf(ids);
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cash_card WHERE owner = ?", Long.class, OWNER)).isZero();
+	}
+
+	@Test
+	void shouldGiveUpOnAnExportThatHoldsItsConnectionTooLong() {
+		CashCardExportOperationsImpl export = new CashCardExportOperationsImpl(jdbcTemplate, transactionManager, 1,
+				Duration.ofMillis(100));
+		List<Long> exported = new ArrayList<>();
+
+		// A client that takes longer than the whole export may to read the first card
+		assertThatThrownBy(() -> export.forEachByOwner("wilson", cashCard -> {
+			exported.add(cashCard.id());
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		})).isInstanceOf(QueryTimeoutException.class);
+
+		assertThat(exported).hasSize(1);
+		// The connection went back to the pool
+		assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+	}
+}
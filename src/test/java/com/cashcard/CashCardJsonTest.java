@@ -1,5 +1,7 @@
 package com.cashcard;
 
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.assertj.core.util.Arrays;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -8,8 +10,10 @@ import org.springframework.boot.test.autoconfigure.json.JsonTest;
 import org.springframework.boot.test.json.JacksonTester;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 // Marks class as a test class which uses the Jackson framework (included as part of Spring)
 // Provides extensive JSON testing and parsing support
@@ -26,20 +30,23 @@ public class CashCardJsonTest {
     @Autowired
     private JacksonTester<CashCard[]> jsonList;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     private CashCard[] cashCards;
 
     @BeforeEach
     void setUp() {
         cashCards = Arrays.array(
-                new CashCard(99L, 123.45, "wilson"),
-                new CashCard(100L, 1.00, "wilson"),
-                new CashCard(101L, 150.00, "wilson")
+                new CashCard(99L, 12345, "wilson"),
+                new CashCard(100L, 100, "wilson"),
+                new CashCard(101L, 15000, "wilson")
         );
     }
 
     @Test
     void cashCardSerializationTest() throws IOException {
-        CashCard cashCard = new CashCard(99L, 123.45, "wilson");
+        CashCard cashCard = new CashCard(99L, 12345, "wilson");
 
         assertThat(json.write(cashCard)).isStrictlyEqualToJson("single.json");
         assertThat(json.write(cashCard)).hasJsonPathNumberValue("@.id");
@@ -61,9 +68,9 @@ public class CashCardJsonTest {
                 }
                 """;
 
-        assertThat(json.parse(expected)).isEqualTo(new CashCard(99L, 123.45, "wilson"));
+        assertThat(json.parse(expected)).isEqualTo(new CashCard(99L, 12345, "wilson"));
         assertThat(json.parseObject(expected).id()).isEqualTo(99);
-        assertThat(json.parseObject(expected).amount()).isEqualTo(123.45);
+        assertThat(json.parseObject(expected).amount()).isEqualTo(12345L);
     }
 
     // Serializes "cashCards" variable into JSON,
@@ -86,4 +93,40 @@ public class CashCardJsonTest {
         assertThat(jsonList.parse(expected)).isEqualTo(cashCards);
     }
 
+    // Amounts are whole cents - integers, exponents and trailing zeros all map to the same cents,
+    // anything finer than a cent or a missing amount is rejected rather than rounded or defaulted to 0
+    @Test
+    void cashCardAmountIsParsedToExactCents() throws IOException {
+        assertThat(json.parseObject("{\"amount\": 150}").amount()).isEqualTo(15000L);
+        assertThat(json.parseObject("{\"amount\": 0.05}").amount()).isEqualTo(5L);
+        assertThat(json.parseObject("{\"amount\": 1.2E1}").amount()).isEqualTo(1200L);
+        assertThat(json.parseObject("{\"amount\": -19.990}").amount()).isEqualTo(-1999L);
+        assertThat(json.write(new CashCard(1L, -5, "wilson"))).extractingJsonPathNumberValue("@.amount").isEqualTo(-0.05);
+
+        assertThatThrownBy(() -> json.parseObject("{\"amount\": 1.234}")).isInstanceOf(JsonMappingException.class);
+        assertThatThrownBy(() -> json.parseObject("{\"owner\": \"wilson\"}")).isInstanceOf(JsonMappingException.class);
+        assertThatThrownBy(() -> json.parseObject("{\"amount\": null}")).isInstanceOf(JsonMappingException.class);
+    }
+
+    // The largest amount is Long.MAX_VALUE cents - anything above is rejected as a mapping error, not an arithmetic one
+    @Test
+    void cashCardAmountOutOfRangeIsRejected() throws IOException {
+        assertThat(json.parseObject("{\"amount\": 92233720368547758.07}").amount()).isEqualTo(Long.MAX_VALUE);
+        assertThat(json.parseObject("{\"amount\": \"-92233720368547758.07\"}").amount()).isEqualTo(-Long.MAX_VALUE);
+
+        assertThatThrownBy(() -> json.parseObject("{\"amount\": 92233720368547758.08}"))
+                .isInstanceOf(JsonMappingException.class).hasMessageContaining("out of range");
+        assertThatThrownBy(() -> json.parseObject("{\"amount\": 99999999999999999}"))
+                .isInstanceOf(JsonMappingException.class).hasMessageContaining("out of range");
+        assertThatThrownBy(() -> json.parseObject("{\"amount\": \"99999999999999999.99\"}"))
+                .isInstanceOf(JsonMappingException.class).hasMessageContaining("out of range");
+    }
+
+    // "JacksonTester" writes characters - HTTP responses are written as bytes, by a different generator
+    @Test
+    void cashCardAmountIsWrittenTheSameAsBytes() throws IOException {
+        String written = new String(objectMapper.writeValueAsBytes(new CashCard(100L, 100, "wilson")), StandardCharsets.UTF_8);
+
+        assertThat(written).contains("\"amount\":1.0,");
+    }
 }
@@ -0,0 +1,73 @@
+package com.cashcard;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+// Tests leave metrics exporters (Prometheus here) switched off unless asked to configure them
+@AutoConfigureObservability
+class CashCardMetricsTests {
+	@Autowired
+	TestRestTemplate restTemplate;
+
+	@Test
+	void shouldPublishHotPathMetricsForPrometheus() {
+		ResponseEntity<String> cashCard = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		assertThat(cashCard.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		// Scraping needs no credentials
+		ResponseEntity<String> response = restTemplate.getForEntity("/actuator/prometheus", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody())
+				// Latency histograms per handler method and per repository method
+				.containsPattern("http_server_requests_seconds_bucket\\{[^}]*handler=\"findById\"")
+				.containsPattern("spring_data_repository_invocations_seconds_bucket\\{[^}]*method=\"findByIdAndOwner\"")
+				.contains("cashcard_auth_password_verify_seconds_bucket")
+				.contains("hikaricp_connections_acquire_seconds_bucket")
+				// Requests shed by admission control, per reason and endpoint
+				.containsPattern("cashcard_admission_rejected_total\\{[^}]*reason=\"rate-limited\"")
+				.contains("cashcard_admission_running");
+	}
+
+	@Test
+	void shouldOnlyExposeMetricsAndCacheStatisticsToOperators() {
+		ResponseEntity<String> response = restTemplate.getForEntity("/actuator/metrics", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+		assertThat(restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/actuator/caches", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+
+		ResponseEntity<String> metrics = restTemplate
+				.withBasicAuth("olga-operator", "xyz789")
+				.getForEntity("/actuator/metrics/cache.gets", String.class);
+		assertThat(metrics.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(metrics.getBody()).contains("\"cacheManager\"");
+		ResponseEntity<String> caches = restTemplate
+				.withBasicAuth("olga-operator", "xyz789")
+				.getForEntity("/actuator/caches", String.class);
+		assertThat(caches.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(caches.getBody()).contains("cashCards");
+	}
+
+	@Test
+	void shouldDenyAnythingNoRuleAllows() {
+		assertThat(restTemplate
+				.withBasicAuth("olga-operator", "xyz789")
+				.getForEntity("/somewhere-else", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+		assertThat(restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/actuator/env", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+	}
+}
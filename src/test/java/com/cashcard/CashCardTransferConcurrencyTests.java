@@ -0,0 +1,74 @@
+package com.cashcard;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Stress test for "CashCardRepository.transfer" - many threads moving money around a few cards at once.
+// Lost updates would change the total, a lock-order mistake would deadlock (and time out the test).
+@SpringBootTest
+@DirtiesContext
+class CashCardTransferConcurrencyTests {
+	private static final String OWNER = "transfer-stress";
+	private static final int THREADS = 16;
+	private static final int TRANSFERS_PER_THREAD = 250;
+
+	@Autowired
+	CashCardRepository cashCardRepository;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Test
+	void shouldConserveTheTotalBalanceUnderConcurrentTransfers() throws Exception {
+		// Few cards with little money on them, so transfers collide on the same cards and some run out of funds
+		List<Long> ids = cashCardRepository.insertAll(OWNER, new long[]{10_000, 10_000, 10_000, 10_000, 10_000, 10_000});
+		long totalBefore = total();
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<int[]>> results = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			results.add(executor.submit(() -> {
+				int[] outcomes = new int[CashCardTransferOperations.Outcome.values().length];
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+					int from = random.nextInt(ids.size());
+					int to = (from + 1 + random.nextInt(ids.size() - 1)) % ids.size();
+					outcomes[cashCardRepository.transfer(OWNER, ids.get(from), ids.get(to), 1 + random.nextInt(5_000)).ordinal()]++;
+				}
+				return outcomes;
+			}));
+		}
+		int completed = 0;
+		for (Future<int[]> result : results) {
+			int[] outcomes = result.get();
+			completed += outcomes[CashCardTransferOperations.Outcome.COMPLETED.ordinal()];
+			assertThat(outcomes[CashCardTransferOperations.Outcome.NOT_FOUND.ordinal()]).isZero();
+		}
+		executor.shutdown();
+
+		assertThat(completed).isPositive();
+		assertThat(total()).isEqualTo(totalBefore);
+		assertThat(jdbcTemplate.queryForObject("SELECT MIN(amount) FROM cash_card WHERE owner = ?", Long.class, OWNER))
+				.isNotNegative();
+		// Every transfer bumped both cards' versions exactly once
+		assertThat(jdbcTemplate.queryForObject("SELECT SUM(version) FROM cash_card WHERE owner = ?", Long.class, OWNER))
+				.isEqualTo(2L * completed);
+		assertThat(cashCardRepository.findSummaryDrift()).isEmpty();
+	}
+
+	private long total() {
+		return jdbcTemplate.queryForObject("SELECT SUM(amount) FROM cash_card WHERE owner = ?", Long.class, OWNER);
+	}
+}
@@ -0,0 +1,85 @@
+package com.cashcard;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GcraRateLimiterTest {
+    // Stands in for "System.nanoTime()" - starting near overflow, as nothing may depend on its sign
+    private final AtomicLong nanoTime = new AtomicLong(Long.MAX_VALUE - Duration.ofSeconds(1).toNanos());
+    private GcraRateLimiter<String> limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new GcraRateLimiter<>(3, nanoTime::get);
+    }
+
+    @Test
+    void shouldAllowABurstAndThenTheSustainedRate() {
+        // 10 per second with bursts of 5
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryAcquire("wilson", 10, 5)).isZero();
+        }
+        // The next one would be allowed in one emission interval (100ms)
+        assertThat(limiter.tryAcquire("wilson", 10, 5)).isEqualTo(Duration.ofMillis(100).toNanos());
+
+        advance(Duration.ofMillis(100));
+        assertThat(limiter.tryAcquire("wilson", 10, 5)).isZero();
+        assertThat(limiter.tryAcquire("wilson", 10, 5)).isPositive();
+    }
+
+    @Test
+    void shouldKeepEachKeyInItsOwnBucket() {
+        assertThat(limiter.tryAcquire("wilson", 1, 1)).isZero();
+        assertThat(limiter.tryAcquire("wilson", 1, 1)).isPositive();
+
+        assertThat(limiter.tryAcquire("sarah", 1, 1)).isZero();
+    }
+
+    @Test
+    void shouldDropRefilledBucketsToStayWithinTheBound() {
+        limiter.tryAcquire("a", 1, 1);
+        limiter.tryAcquire("b", 1, 1);
+        limiter.tryAcquire("c", 1, 1);
+        assertThat(limiter.size()).isEqualTo(3);
+
+        // Still full of live buckets - a new key is let through untracked rather than grow past the bound
+        assertThat(limiter.tryAcquire("d", 1, 1)).isZero();
+        assertThat(limiter.size()).isEqualTo(3);
+
+        // Once the others have refilled they are dropped to make room
+        advance(Duration.ofSeconds(2));
+        assertThat(limiter.tryAcquire("d", 1, 1)).isZero();
+        assertThat(limiter.size()).isEqualTo(1);
+        assertThat(limiter.tryAcquire("d", 1, 1)).isPositive();
+    }
+
+    @Test
+    void shouldNotSweepAgainBeforeTheEarliestRefill() {
+        limiter.tryAcquire("a", 1, 1);
+        limiter.tryAcquire("b", 10, 1);
+        limiter.tryAcquire("c", 10, 1);
+        advance(Duration.ofMillis(100));
+        // Drops "b" and "c" - the earliest refill of what is left ("a") is 900ms away
+        limiter.tryAcquire("d", 1, 1);
+        limiter.tryAcquire("e", 10, 1);
+        assertThat(limiter.size()).isEqualTo(3);
+
+        // "e" has refilled, but the full map is not swept for every new key until then
+        advance(Duration.ofMillis(200));
+        assertThat(limiter.tryAcquire("f", 1, 1)).isZero();
+        assertThat(limiter.size()).isEqualTo(3);
+
+        advance(Duration.ofMillis(700));
+        limiter.tryAcquire("f", 1, 1);
+        assertThat(limiter.size()).isEqualTo(2);
+    }
+
+    private void advance(Duration duration) {
+        nanoTime.addAndGet(duration.toNanos());
+    }
+}
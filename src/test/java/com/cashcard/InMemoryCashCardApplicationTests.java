@@ -0,0 +1,62 @@
+package com.cashcard;
+
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Every test of "CashCardApplicationTests", run against "InMemoryCashCardRepository" instead of Spring Data JDBC.
+// "${random.uuid}" gives each application context its own write-ahead log, so each one starts from data.sql
+// (loaded from the database into memory) just like the JDBC tests do.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"cashcard.repository=memory",
+		"cashcard.repository.memory.wal-file=${java.io.tmpdir}/cashcard-test-${random.uuid}.wal",
+		"cashcard.repository.memory.fsync=false"})
+class InMemoryCashCardApplicationTests extends CashCardApplicationTests {
+
+	@Test
+	void shouldServeCashCardsFromTheInMemoryEngine() {
+		assertThat(AopUtils.getTargetClass(cashCardRepository)).isEqualTo(InMemoryCashCardRepository.class);
+	}
+
+	// The engine keeps its summaries in its partitions, not in "cash_card_summary" - so the drift to detect is in there
+	@Test
+	@DirtiesContext
+	@Override
+	void shouldKeepTheSummaryInStepWithUpdatesAndReportDrift() {
+		HttpEntity<CashCard> request = new HttpEntity<>(new CashCard(null, 50000, null));
+		restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.exchange("/cashcards/100", HttpMethod.PUT, request, Void.class);
+
+		DocumentContext documentContext = JsonPath.parse(restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForObject("/cashcards/summary", String.class));
+		assertThat(documentContext.read("$.count", Integer.class)).isEqualTo(3);
+		assertThat(documentContext.read("$.total", Double.class)).isEqualTo(773.45);
+		assertThat(documentContext.read("$.min", Double.class)).isEqualTo(123.45);
+		assertThat(documentContext.read("$.max", Double.class)).isEqualTo(500.00);
+		assertThat(cashCardRepository.findSummaryDrift()).isEmpty();
+
+		// A partition total that no longer matches its cards shows up in the consistency check
+		InMemoryCashCardRepository engine = AopTestUtils.getUltimateTargetObject(cashCardRepository);
+		List<?> partitions = (List<?>) ReflectionTestUtils.getField(engine, "partitions");
+		Object brenda = partitions.stream()
+				.filter(partition -> "brenda".equals(ReflectionTestUtils.getField(partition, "owner")))
+				.findFirst().orElseThrow();
+		ReflectionTestUtils.setField(brenda, "total", 0L);
+		assertThat(cashCardRepository.findSummaryDrift())
+				.extracting(CashCardSummaryDrift::owner)
+				.containsExactly("brenda");
+	}
+}
@@ -0,0 +1,174 @@
+package com.cashcard;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+// Plain unit test of the in-memory engine's durability - restarts are simulated by opening a second engine on the same log
+class InMemoryCashCardRepositoryTest {
+    @TempDir
+    Path directory;
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void shouldRebuildTheSameStateFromTheLogAfterARestart() throws IOException {
+        InMemoryCashCardRepository repository = open();
+        List<Long> ids = repository.insertAll("wilson", new long[]{500, 100, 300});
+        repository.insertAll("brenda", new long[]{700});
+        repository.updateAmount(ids.get(0), "wilson", 50);
+        repository.transfer("wilson", ids.get(2), ids.get(1), 200);
+        repository.deleteById(ids.get(1));
+        List<CashCard> before = repository.findByOwner("wilson", PageRequest.of(0, 10, Sort.by("amount")));
+        repository.destroy();
+
+        InMemoryCashCardRepository restarted = open();
+
+        assertThat(restarted.findByOwner("wilson", PageRequest.of(0, 10, Sort.by("amount")))).isEqualTo(before);
+        assertThat(restarted.findByOwner("wilson", PageRequest.of(0, 10, Sort.by("amount"))))
+                .extracting(CashCard::amount).containsExactly(50L, 100L);
+        assertThat(restarted.findSummaryByOwner("brenda")).isEqualTo(new CashCardSummary(1, 700, 700L, 700L));
+        assertThat(restarted.findSummaryDrift()).isEmpty();
+        // New ids continue after the highest one ever handed out
+        assertThat(restarted.insertAll("wilson", new long[]{1}).get(0)).isGreaterThan(ids.get(2) + 1);
+        restarted.destroy();
+    }
+
+    @Test
+    void shouldDropATornRecordAtTheEndOfTheLog() throws IOException {
+        InMemoryCashCardRepository repository = open();
+        repository.insertAll("wilson", new long[]{100, 200});
+        repository.destroy();
+        // A crash in the middle of appending an UPSERT record
+        Files.write(walFile(), new byte[]{2, 0, 0, 0}, StandardOpenOption.APPEND);
+
+        InMemoryCashCardRepository restarted = open();
+
+        assertThat(restarted.findSummaryByOwner("wilson")).isEqualTo(new CashCardSummary(2, 300, 100L, 200L));
+        restarted.insertAll("wilson", new long[]{300});
+        restarted.destroy();
+        assertThat(open().findSummaryByOwner("wilson").count()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldUndoAWriteWhoseLogCommitFailed() throws IOException {
+        InMemoryCashCardRepository repository = open();
+        List<Long> ids = repository.insertAll("wilson", new long[]{100, 200});
+        // Appending and publishing the records works, it is the flush in "sync" that fails
+        FileChannel channel = (FileChannel) ReflectionTestUtils.getField(ReflectionTestUtils.getField(repository, "log"), "channel");
+        channel.close();
+
+        assertThatThrownBy(() -> repository.insertAll("wilson", new long[]{300, 400}))
+                .isInstanceOf(UncheckedIOException.class);
+        assertThatThrownBy(() -> repository.transfer("wilson", ids.get(1), ids.get(0), 50))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(repository.findByOwner("wilson", PageRequest.of(0, 10, Sort.by("amount"))))
+                .extracting(CashCard::id, CashCard::amount)
+                .containsExactly(tuple(ids.get(0), 100L), tuple(ids.get(1), 200L));
+        assertThat(repository.findSummaryByOwner("wilson")).isEqualTo(new CashCardSummary(2, 300, 100L, 200L));
+        assertThat(repository.findById(ids.get(1) + 1)).isEmpty();
+    }
+
+    @Test
+    void shouldUndoAWriteThatFailedHalfway() throws IOException {
+        InMemoryCashCardRepository repository = open();
+        List<Long> ids = repository.insertAll("wilson", new long[]{100, 200});
+
+        // The first card is updated before the missing second one fails the write
+        assertThatThrownBy(() -> repository.updateAmounts("wilson", Arrays.asList(new CashCard(ids.get(0), 999, "wilson"), null)))
+                .isInstanceOf(NullPointerException.class);
+        assertThat(repository.findByIdAndOwner(ids.get(0), "wilson").amount()).isEqualTo(100);
+
+        // Nor does the next write take its record to the log
+        repository.updateAmount(ids.get(1), "wilson", 250);
+        repository.destroy();
+        InMemoryCashCardRepository restarted = open();
+        assertThat(restarted.findByOwner("wilson", PageRequest.of(0, 10, Sort.by("amount"))))
+                .extracting(CashCard::amount).containsExactly(100L, 250L);
+        restarted.destroy();
+    }
+
+    @Test
+    void shouldKeepEveryWriteThatWasFlushedTogether() throws Exception {
+        InMemoryCashCardRepository repository = open();
+        // Writers that publish while another one flushes share its next flush
+        try (ExecutorService writers = Executors.newFixedThreadPool(8)) {
+            for (int writer = 0; writer < 8; writer++) {
+                String owner = "owner-" + writer;
+                writers.submit(() -> {
+                    for (int card = 1; card <= 50; card++) {
+                        repository.insertAll(owner, new long[]{card});
+                    }
+                    return null;
+                });
+            }
+        }
+        repository.destroy();
+
+        InMemoryCashCardRepository restarted = open();
+        for (int writer = 0; writer < 8; writer++) {
+            assertThat(restarted.findSummaryByOwner("owner-" + writer)).isEqualTo(new CashCardSummary(50, 1275, 1L, 50L));
+        }
+        restarted.destroy();
+    }
+
+    @Test
+    void shouldLoadTheDatabaseWhenThereIsNoLogYet() throws IOException {
+        jdbcTemplate.update("INSERT INTO cash_card (id, amount, owner) VALUES (99, 12345, 'wilson')");
+
+        InMemoryCashCardRepository repository = open();
+
+        assertThat(repository.findByIdAndOwner(99L, "wilson")).isEqualTo(new CashCard(99L, 12345, "wilson", 0L));
+        assertThat(repository.insertAll("wilson", new long[]{1})).containsExactly(100L);
+        repository.destroy();
+    }
+
+    private InMemoryCashCardRepository open() throws IOException {
+        return new InMemoryCashCardRepository(jdbcTemplate, new ConcurrentMapCacheManager(), walFile().toString(), false, 500);
+    }
+
+    private Path walFile() {
+        return directory.resolve("cashcards.wal");
+    }
+}
@@ -0,0 +1,47 @@
+package com.cashcard;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OwnerShardRingTest {
+
+    @Test
+    void shouldPlaceAnOwnerOnTheSameShardEveryTime() {
+        OwnerShardRing ring = new OwnerShardRing(4, 128);
+        OwnerShardRing sameRing = new OwnerShardRing(4, 128);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(ring.shardOf("owner-" + i)).isEqualTo(sameRing.shardOf("owner-" + i)).isBetween(0, 3);
+        }
+    }
+
+    @Test
+    void shouldSpreadOwnersEvenly() {
+        OwnerShardRing ring = new OwnerShardRing(4, 128);
+        int[] owners = new int[4];
+        for (int i = 0; i < 40_000; i++) {
+            owners[ring.shardOf("owner-" + i)]++;
+        }
+        // 10000 each if perfectly even
+        for (int count : owners) {
+            assertThat(count).isBetween(8000, 12000);
+        }
+    }
+
+    @Test
+    void shouldOnlyMoveOwnersOntoAnAddedShard() {
+        OwnerShardRing four = new OwnerShardRing(4, 128);
+        OwnerShardRing five = new OwnerShardRing(5, 128);
+        int moved = 0;
+        for (int i = 0; i < 40_000; i++) {
+            int before = four.shardOf("owner-" + i);
+            int after = five.shardOf("owner-" + i);
+            if (before != after) {
+                assertThat(after).isEqualTo(4);
+                moved++;
+            }
+        }
+        // About a fifth of the owners, not the four fifths a "hash % shards" placement would move
+        assertThat(moved).isBetween(6000, 10000);
+    }
+}
@@ -0,0 +1,254 @@
+package com.cashcard;
+
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Every test of "CashCardApplicationTests", run with the JDBC repository sharded over three in-memory H2 databases.
+// data.sql loads into shard 0, so wilson and brenda are adopted there; the tests below place and move other owners.
+// "${random.uuid}" gives each application context its own databases.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"cashcard.sharding.enabled=true",
+		"cashcard.sharding.shards[0].url=jdbc:h2:mem:shard-0-${random.uuid};DB_CLOSE_DELAY=-1",
+		"cashcard.sharding.shards[1].url=jdbc:h2:mem:shard-1-${random.uuid};DB_CLOSE_DELAY=-1",
+		"cashcard.sharding.shards[2].url=jdbc:h2:mem:shard-2-${random.uuid};DB_CLOSE_DELAY=-1"})
+class ShardedCashCardApplicationTests extends CashCardApplicationTests {
+
+	@Autowired
+	OwnerShardDirectory directory;
+
+	@Autowired
+	ShardRebalancer rebalancer;
+
+	@Autowired
+	ShardRoutingDataSource dataSource;
+
+	@Test
+	void shouldAdoptTheOwnersOfExistingCardsOnTheirShard() {
+		assertThat(directory.shardOf("wilson")).isZero();
+		assertThat(directory.shardOf("brenda")).isZero();
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldPlaceNewOwnersOnTheRingWithIdsThatNameTheirShard() {
+		Set<Integer> used = new HashSet<>();
+		Set<Long> ids = new HashSet<>();
+		for (int i = 0; i < 30; i++) {
+			String owner = "sharded-owner-" + i;
+			CashCard saved = cashCardRepository.save(new CashCard(null, 100 * i, owner));
+			int shard = directory.shardOf(owner);
+
+			assertThat(shard).isEqualTo(directory.ringShardOf(owner));
+			assertThat(saved.id() % ShardingConfig.MAX_SHARDS).isEqualTo(shard);
+			assertThat(cardsOn(shard, owner)).isEqualTo(1);
+			assertThat(cashCardRepository.findByIdAndOwner(saved.id(), owner)).isEqualTo(saved);
+			used.add(shard);
+			ids.add(saved.id());
+		}
+		assertThat(used).containsExactlyInAnyOrder(0, 1, 2);
+		assertThat(ids).hasSize(30);
+
+		// Calls that name no owner see every shard - data.sql's four cards plus the thirty
+		assertThat(cashCardRepository.count()).isEqualTo(34);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldKeepServingAnOwnerMovedToAnotherShard() {
+		assertThat(rebalancer.move("wilson", 2)).isEqualTo(3);
+		assertThat(directory.shardOf("wilson")).isEqualTo(2);
+		assertThat(cardsOn(0, "wilson")).isZero();
+		assertThat(cardsOn(2, "wilson")).isEqualTo(3);
+
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(JsonPath.parse(response.getBody()).read("$.amount", Double.class)).isEqualTo(123.45);
+
+		// The summary moved along with the cards
+		DocumentContext summary = JsonPath.parse(restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForObject("/cashcards/summary", String.class));
+		assertThat(summary.read("$.count", Integer.class)).isEqualTo(3);
+		assertThat(summary.read("$.total", Double.class)).isEqualTo(274.45);
+
+		// New cards are created on the new shard
+		URI location = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.postForLocation("/cashcards", new CashCard(null, 25000, null));
+		long id = Long.parseLong(location.getPath().substring(location.getPath().lastIndexOf('/') + 1));
+		assertThat(id % ShardingConfig.MAX_SHARDS).isEqualTo(2);
+		assertThat(cardsOn(2, "wilson")).isEqualTo(4);
+		assertThat(cashCardRepository.findSummaryDrift()).isEmpty();
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldRebalanceOwnersOntoTheirRingShard() {
+		// Both were adopted on shard 0, only those the ring places elsewhere move
+		Set<String> misplaced = new HashSet<>();
+		for (String owner : Set.of("wilson", "brenda")) {
+			if (directory.ringShardOf(owner) != 0) {
+				misplaced.add(owner);
+			}
+		}
+		assertThat(rebalancer.rebalance().keySet()).isEqualTo(misplaced);
+		assertThat(directory.shardOf("wilson")).isEqualTo(directory.ringShardOf("wilson"));
+		assertThat(directory.shardOf("brenda")).isEqualTo(directory.ringShardOf("brenda"));
+		assertThat(rebalancer.rebalance()).isEmpty();
+		assertThat(cashCardRepository.count()).isEqualTo(4);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldLetOperatorsRebalanceThroughTheShardEndpoint() {
+		long misplaced = Set.of("wilson", "brenda").stream()
+				.filter(owner -> directory.ringShardOf(owner) != 0)
+				.count();
+		DocumentContext report = JsonPath.parse(restTemplate
+				.withBasicAuth("olga-operator", "xyz789")
+				.getForObject("/actuator/cashcardshards", String.class));
+		assertThat(report.read("$.misplacedOwners", Long.class)).isEqualTo(misplaced);
+		assertThat(report.read("$.shards[0].cards", Long.class)).isEqualTo(4);
+
+		// Card owners may not move anybody
+		assertThat(restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.postForEntity("/actuator/cashcardshards", noArguments(), String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+
+		ResponseEntity<String> rebalanced = restTemplate
+				.withBasicAuth("olga-operator", "xyz789")
+				.postForEntity("/actuator/cashcardshards", noArguments(), String.class);
+		assertThat(rebalanced.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(JsonPath.parse(rebalanced.getBody()).read("$.length()", Integer.class)).isEqualTo((int) misplaced);
+		assertThat(directory.shardOf("wilson")).isEqualTo(directory.ringShardOf("wilson"));
+		assertThat(directory.shardOf("brenda")).isEqualTo(directory.ringShardOf("brenda"));
+
+		// Then one owner moved by hand, off its ring shard
+		int elsewhere = (directory.ringShardOf("wilson") + 1) % directory.shardCount();
+		ResponseEntity<String> moved = restTemplate
+				.withBasicAuth("olga-operator", "xyz789")
+				.postForEntity("/actuator/cashcardshards/wilson", Map.of("shard", elsewhere), String.class);
+		assertThat(moved.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(JsonPath.parse(moved.getBody()).read("$.cards", Integer.class)).isEqualTo(3);
+		assertThat(cardsOn(elsewhere, "wilson")).isEqualTo(3);
+		assertThat(JsonPath.parse(restTemplate
+				.withBasicAuth("olga-operator", "xyz789")
+				.getForObject("/actuator/cashcardshards", String.class))
+				.read("$.misplacedOwners", Long.class)).isEqualTo(1);
+		assertThat(restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.getForEntity("/cashcards/99", String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.OK);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldMoveAnOwnerWhileItsExportIsStillBeingRead() throws Exception {
+		CountDownLatch firstCard = new CountDownLatch(1);
+		CountDownLatch moved = new CountDownLatch(1);
+		List<Long> exported = new CopyOnWriteArrayList<>();
+		ExecutorService exporter = Executors.newSingleThreadExecutor();
+		try {
+			// A slow client: the export stops after its first card until the move is done
+			Future<?> export = exporter.submit(() -> cashCardRepository.forEachByOwner("wilson", cashCard -> {
+				exported.add(cashCard.id());
+				firstCard.countDown();
+				try {
+					moved.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}));
+			assertThat(firstCard.await(10, TimeUnit.SECONDS)).isTrue();
+
+			assertThat(CompletableFuture.supplyAsync(() -> rebalancer.move("wilson", 2)).get(10, TimeUnit.SECONDS))
+					.isEqualTo(3);
+			moved.countDown();
+			export.get(10, TimeUnit.SECONDS);
+		} finally {
+			exporter.shutdownNow();
+		}
+
+		// The export read its cursor's snapshot of shard 0 to the end, cards deleted there by the move included
+		assertThat(exported).containsExactly(100L, 99L, 101L);
+		assertThat(cardsOn(0, "wilson")).isZero();
+		assertThat(cardsOn(2, "wilson")).isEqualTo(3);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldFollowOwnersThatAnotherInstanceMoved() {
+		// Another instance of the application: the same databases, its own copy of the directory
+		List<JdbcTemplate> shards = new ArrayList<>();
+		for (int shard = 0; shard < directory.shardCount(); shard++) {
+			shards.add(directory.shard(shard));
+		}
+		OwnerShardDirectory otherDirectory = new OwnerShardDirectory(shards, new OwnerShardRing(shards.size(), 128), 256);
+		ShardRebalancer otherRebalancer = new ShardRebalancer(otherDirectory, dataSource);
+		assertThat(otherRebalancer.move("wilson", 2)).isEqualTo(3);
+		assertThat(otherRebalancer.move("brenda", 1)).isEqualTo(1);
+
+		// This instance still routes both to shard 0, which now refuses their cards
+		assertThat(directory.shardOf("wilson")).isZero();
+		assertThatThrownBy(() -> directory.shard(0).update("INSERT INTO cash_card (amount, owner) VALUES (1, 'wilson')"))
+				.isInstanceOf(DataAccessException.class)
+				.hasMessageContaining("moved to shard 2");
+
+		// A write is refused there and goes to the new shard instead
+		URI location = restTemplate
+				.withBasicAuth("wilson", "abc123")
+				.postForLocation("/cashcards", new CashCard(null, 25000, null));
+		long id = Long.parseLong(location.getPath().substring(location.getPath().lastIndexOf('/') + 1));
+		assertThat(id % ShardingConfig.MAX_SHARDS).isEqualTo(2);
+		assertThat(cardsOn(2, "wilson")).isEqualTo(4);
+		assertThat(directory.shardOf("wilson")).isEqualTo(2);
+
+		// A read finds nothing there and looks again - the card cache only sees the second answer
+		assertThat(cashCardRepository.findByIdAndOwner(102L, "brenda")).isEqualTo(new CashCard(102L, 20000, "brenda", 0L));
+		assertThat(directory.shardOf("brenda")).isEqualTo(1);
+		assertThat(cashCardRepository.findByIdAndOwner(102L, "brenda")).isNotNull();
+		assertThat(cashCardRepository.findSummaryDrift()).isEmpty();
+	}
+
+	// Actuator write operations take their arguments as a JSON object - "rebalance" has none
+	private static HttpEntity<String> noArguments() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		return new HttpEntity<>("{}", headers);
+	}
+
+	private long cardsOn(int shard, String owner) {
+		return directory.shard(shard).queryForObject("SELECT COUNT(*) FROM cash_card WHERE owner = ?", Long.class, owner);
+	}
+}
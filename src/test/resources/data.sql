@@ -4,7 +4,7 @@ in a production system
 Spring allows for the separation of test-only resources from the main resources when needed
 */
 
-INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (99, 123.45, 'wilson');
-INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (100, 1.00, 'wilson');
-INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (101, 150.00, 'wilson');
-INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (102, 200.00, 'brenda');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (99, 12345, 'wilson');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (100, 100, 'wilson');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (101, 15000, 'wilson');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (102, 20000, 'brenda');